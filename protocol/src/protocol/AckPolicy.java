@@ -0,0 +1,138 @@
+/*
+ * Sistemas de Telecomunicacoes 
+ *          2017/2018
+ */
+package protocol;
+
+import terminal.Options;
+
+/**
+ * Policy that decides when the receiver sends standalone ACK frames, after
+ * receiving a DATA frame or when the ACK timer expires. It is selected with 
+ * the option protocol.ack.policy:
+ *   immediate - ACK every DATA frame received;
+ *   every     - ACK every protocol.ack.every frames received in order, with
+ *               the ACK timer as backstop;
+ *   timer     - ACK when the timer started by the first frame not 
+ *               acknowledged expires (delayed ACK);
+ *   restart   - ACK when no DATA frame is received during the ACK timeout;
+ *   gap       - like timer, but ACK immediately a frame out of order;
+ *   piggyback - only acknowledge in DATA frames, besides the ACK frames sent
+ *               by some protocols to recover from losses; only usable with
+ *               traffic in both directions.
+ * Without the option, each protocol uses its original behaviour.
+ */
+public class AckPolicy {
+
+    /**
+     * Policy modes
+     */
+    public enum Mode {
+        IMMEDIATE, EVERY, TIMER, RESTART, GAP, PIGGYBACK
+    }
+
+    /**
+     * Actions returned by on_data
+     */
+    static final int NONE = 0;
+    static final int SEND = 1;
+    static final int START_TIMER = 2;
+    static final int RESTART_TIMER = 3;
+
+    /**
+     * Creates the policy configured in the options
+     * @param def mode used if no policy is configured, or if it is invalid
+     * @return the policy
+     */
+    static AckPolicy configured(Mode def) {
+        Mode mode = Options.get_enum("ack.policy", Mode.class, def);
+        return new AckPolicy(mode, Options.get_int("ack.every", 2));
+    }
+
+    /**
+     * Constructor
+     * @param _mode policy mode
+     * @param _every number of frames acknowledged by each ACK in mode EVERY
+     */
+    public AckPolicy(Mode _mode, int _every) {
+        this.mode = _mode;
+        this.every = Math.max(1, _every);
+        this.pending = 0;
+    }
+
+    /**
+     * Get the policy mode
+     * @return the mode
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Decides what to do after receiving a DATA frame
+     * @param in_order true if the frame was the one expected and was accepted
+     * @return the action: NONE, SEND, START_TIMER or RESTART_TIMER
+     */
+    int on_data(boolean in_order) {
+        switch (mode) {
+            case IMMEDIATE:
+                return SEND;
+            case EVERY:
+                if (in_order && (++pending >= every)) {
+                    return SEND;
+                }
+                return START_TIMER;
+            case TIMER:
+                return START_TIMER;
+            case RESTART:
+                return RESTART_TIMER;
+            case GAP:
+                return in_order ? START_TIMER : SEND;
+            default:
+                return NONE;
+        }
+    }
+
+    /**
+     * Decides if an ACK frame is sent when the ACK timer expires
+     * @return true to send the ACK frame
+     */
+    boolean on_ack_timer() {
+        return mode != Mode.PIGGYBACK;
+    }
+
+    /**
+     * Registers that all the frames received were acknowledged, by an ACK
+     * frame or by a DATA frame
+     */
+    void acknowledged() {
+        pending = 0;
+    }
+
+    /**
+     * Returns a string with the policy
+     * @return string with the policy
+     */
+    @Override
+    public String toString() {
+        return "ACK policy " + mode.name().toLowerCase() + ((mode == Mode.EVERY) ? " " + every : "");
+    }
+
+
+    /* Variables */
+
+    /**
+     * Policy mode
+     */
+    private final Mode mode;
+
+    /**
+     * Number of frames acknowledged by each ACK in mode EVERY
+     */
+    private final int every;
+
+    /**
+     * Number of frames received in order and not acknowledged
+     */
+    private int pending;
+}
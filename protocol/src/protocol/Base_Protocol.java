@@ -7,6 +7,7 @@ package protocol;
 import terminal.Simulator;
 import simulator.Frame;
 import terminal.NetworkLayer;
+import terminal.Options;
 
 /**
  * Base protocol class that defines support functions for a basic timer interface,
@@ -16,6 +17,12 @@ import terminal.NetworkLayer;
  */
 public class Base_Protocol implements Callbacks {
 
+    /**
+     * Maximum ring buffer size used to cover a sequence space that is not a
+     * power of two
+     */
+    private static final int MAX_RING_SIZE = 1 << 20;
+
     /**
      * Generic constructor for a protocol
      * @param _sim  simulator object
@@ -24,6 +31,28 @@ public class Base_Protocol implements Callbacks {
     public Base_Protocol(Simulator _sim, NetworkLayer _net) {
         this.sim = _sim;
         this.net = _net;
+        this.max_seq = sim.get_max_sequence();
+        this.seq_space = (long) max_seq + 1;
+        this.seq_mask = ((seq_space & (seq_space - 1)) == 0) ? max_seq : -1;
+        long timeout = sim.get_timeout_time();
+        this.rto = new RtoEstimator(timeout, Options.get_long("rto.min", 1),
+                Options.get_long("rto.max", 64 * Math.max(1, timeout)),
+                Options.get_boolean("rto.adaptive", false));
+        this.timed_seq = -1;
+        this.cwnd = new WindowController(sim.get_send_window(),
+                Options.get_boolean("aimd", false));
+        this.ack_policy = AckPolicy.configured(AckPolicy.Mode.RESTART);
+        this.tlp = Options.get_boolean("tlp", false);
+        this.tlp_factor = Options.get_double("tlp.factor", 2.0);
+        this.probe_sent = false;
+        this.probes = 0;
+        this.credit = Options.get_boolean("credit", false);
+        if (credit) {
+            sim.Log("Credit flow control: the channel must accept the WND field of the frames\n");
+        }
+        this.peer_credit = Integer.MAX_VALUE;
+        this.credit_probe = false;
+        this.window_probes = 0;
     }
 
     
@@ -38,8 +67,8 @@ public class Base_Protocol implements Callbacks {
      * @param c - upper bound
      * @return true is b is between a and c
      */
-    static boolean between(int a, int b, int c) {
-        return ((a<=b)&&(b<c)) || ((c<a)&&(a<=b)) || ((b<c)&&(c<a));
+    final boolean between(int a, int b, int c) {
+        return diff_seq(a, b) < diff_seq(a, c);
     }
 
     /**
@@ -49,7 +78,10 @@ public class Base_Protocol implements Callbacks {
      * @return the successor of the sequence number
      */
     final int next_seq(int n) {
-        return (n + 1) % (sim.get_max_sequence() + 1);
+        if (seq_mask >= 0) {
+            return (n + 1) & seq_mask;
+        }
+        return (n == max_seq) ? 0 : n + 1;
     }
 
     /**
@@ -60,7 +92,10 @@ public class Base_Protocol implements Callbacks {
      * @return the successor of the sequence number
      */
     final int add_seq(int n, int k) {
-        return (n + k) % (sim.get_max_sequence() + 1);
+        if (seq_mask >= 0) {
+            return (n + k) & seq_mask;
+        }
+        return (int) (((long) n + k) % seq_space);
     }
 
     /**
@@ -70,7 +105,10 @@ public class Base_Protocol implements Callbacks {
      * @return the predecessor of the sequence number
      */
     final int prev_seq(int n) {
-        return (sim.get_max_sequence() + n) % (sim.get_max_sequence() + 1);
+        if (seq_mask >= 0) {
+            return (n - 1) & seq_mask;
+        }
+        return (n == 0) ? max_seq : n - 1;
     }
 
     /**
@@ -81,7 +119,10 @@ public class Base_Protocol implements Callbacks {
      * @return the successor of the sequence number
      */
     final int decr_seq(int n, int k) {
-        return (n + sim.get_max_sequence() + 1 - k) % (sim.get_max_sequence() + 1);
+        if (seq_mask >= 0) {
+            return (n - k) & seq_mask;
+        }
+        return (int) Math.floorMod((long) n - k, seq_space);
     }
 
     /**
@@ -91,16 +132,386 @@ public class Base_Protocol implements Callbacks {
      * @param b first sequence number
      * @return number of numbers between a and b
      */
-    int diff_seq(int a, int b) {
-        if (b>=a) {
-            return b-a;
+    final int diff_seq(int a, int b) {
+        if (seq_mask >= 0) {
+            return (b - a) & seq_mask;
         }
-        else {
-            return b+sim.get_max_sequence()+1-a;
-        }     
+        if (b >= a) {
+            return b - a;
+        }
+        return (int) (b + seq_space - a);
     }
 
-    
+    /**
+     * Get the size of a ring buffer that stores a window of frames indexed by
+     * (seq &amp; (size-1)): the smallest power of two not below the window that
+     * divides the sequence space, or that covers the sequence space.
+     * Large sequence spaces must be powers of two, to keep the ring buffers 
+     * at the window size
+     * @param window maximum number of frames stored
+     * @return the ring buffer size
+     */
+    final int ring_size(int window) {
+        int size = pow2_ceil(window);
+        if ((seq_space % size) != 0) {
+            if (seq_space > MAX_RING_SIZE) {
+                throw new IllegalArgumentException("Sequence space " + seq_space
+                        + " must be a power of two for a window of " + window);
+            }
+            size = pow2_ceil((int) seq_space);
+        }
+        return size;
+    }
+
+    /**
+     * Get the smallest power of two equal to or above n
+     * @param n positive number
+     * @return the power of two
+     */
+    static int pow2_ceil(int n) {
+        return (n <= 1) ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+
+/******************************************************************************/
+// Code that exposes the protocol state for monitoring
+/******************************************************************************/
+
+    /**
+     * Get the sequence number of the oldest frame not acknowledged
+     * @return the sending window base, or -1 if not defined by the protocol
+     */
+    public int window_base() {
+        return -1;
+    }
+
+    /**
+     * Get the sequence number of the next new frame to send
+     * @return the next sequence number, or -1 if not defined by the protocol
+     */
+    public int next_to_send() {
+        return -1;
+    }
+
+    /**
+     * Get the number of frames sent and not acknowledged
+     * @return the number of frames in flight, or 0 if not defined by the protocol
+     */
+    public int in_flight() {
+        if ((window_base() < 0) || (next_to_send() < 0)) {
+            return 0;
+        }
+        return diff_seq(window_base(), next_to_send());
+    }
+
+    /**
+     * Get the number of frames retransmitted since the sending window base 
+     * last moved
+     * @return the number of retransmissions in the current window, or 0 if not
+     * defined by the protocol
+     */
+    public int window_retransmissions() {
+        return 0;
+    }
+
+    /**
+     * Get the number of fast retransmissions triggered by duplicate ACKs
+     * @return the number of fast retransmissions, or 0 if not supported by 
+     * the protocol
+     */
+    public long fast_retransmissions() {
+        return 0;
+    }
+
+    /**
+     * Get the number of tail-loss probes sent
+     * @return the number of probes
+     */
+    public long probes_sent() {
+        return probes;
+    }
+
+
+/******************************************************************************/
+// Code that manages the adaptive retransmission timeout
+/******************************************************************************/
+
+    /**
+     * Get the current retransmission timeout; the configured timeout, which
+     * may be changed during the simulation, is used before the first RTT
+     * sample, or always if the RTO is not adaptive (rto.adaptive option, 
+     * off by default)
+     * @return the RTO
+     */
+    private long current_rto() {
+        rto.set_initial(sim.get_timeout_time());
+        return rto.rto();
+    }
+
+    /**
+     * Starts the data timer with the current retransmission timeout
+     */
+    final void start_rto_timer() {
+        sim.start_data_timer_after(current_rto());
+    }
+
+    /**
+     * Starts measuring the RTT of a frame, if no other frame is being timed;
+     * must only be called for frames transmitted for the first time
+     * @param seq sequence number of the frame
+     * @param time time when the transmission ended
+     */
+    final void rtt_timing_start(int seq, long time) {
+        if (timed_seq < 0) {
+            timed_seq = seq;
+            timed_time = time;
+        }
+    }
+
+    /**
+     * Handles the acknowledgement of a frame; feeds the RTO estimator if it 
+     * was the frame being timed
+     * @param seq sequence number of the frame acknowledged
+     * @param time current simulation time
+     */
+    final void rtt_timing_acked(int seq, long time) {
+        if (seq == timed_seq) {
+            rto.sample(time - timed_time);
+            timed_seq = -1;
+        }
+    }
+
+    /**
+     * Stops measuring the RTT, because the frame timed will be retransmitted
+     * and its acknowledgement becomes ambiguous (Karn's rule)
+     */
+    final void rtt_timing_cancel() {
+        timed_seq = -1;
+    }
+
+    /**
+     * Handles a data timeout: backs off the RTO and stops the RTT measurement
+     */
+    final void rto_timeout() {
+        rto.backoff();
+        rtt_timing_cancel();
+    }
+
+    /**
+     * Get the delay of the tail-loss probe: tlp.factor times the smoothed RTT,
+     * or half the RTO before the first RTT sample, always below the RTO
+     * @return the probe delay
+     */
+    private long probe_delay() {
+        long timeout = current_rto();
+        long delay = (rto.samples() == 0) ? timeout / 2
+                : (long) Math.ceil(tlp_factor * rto.srtt());
+        return Math.max(1, Math.min(delay, timeout - 1));
+    }
+
+    /**
+     * Starts the probe timer when the sender becomes idle with frames waiting
+     * for acknowledgement, if the tail-loss probe is enabled (tlp option) and 
+     * no probe was sent since the window last moved
+     */
+    final void arm_probe() {
+        if (tlp && !probe_sent && !sim.isactive_probe_timer()) {
+            sim.start_probe_timer(probe_delay());
+        }
+    }
+
+    /**
+     * Stops the probe timer; a new probe may be sent when the sender becomes
+     * idle again. Called when the window moves or when the data timer expires
+     */
+    final void reset_probe() {
+        probe_sent = false;
+        if (sim.isactive_probe_timer()) {
+            sim.cancel_probe_timer();
+        }
+    }
+
+    /**
+     * Registers the transmission of a tail-loss probe, stopping the RTT 
+     * measurement (Karn's rule)
+     */
+    final void probe_transmitted() {
+        probe_sent = true;
+        probes++;
+        rtt_timing_cancel();
+    }
+
+    /**
+     * Get the retransmission timeout estimator
+     * @return the estimator
+     */
+    public RtoEstimator rto_estimator() {
+        return rto;
+    }
+
+    /**
+     * Applies the ACK policy after receiving a DATA frame: sends an ACK frame
+     * now, or starts the ACK timer
+     * @param in_order true if the frame was the one expected and was accepted
+     * @param ack acknowledgement number sent
+     */
+    final void acknowledge_data(boolean in_order, int ack) {
+        switch (ack_policy.on_data(in_order)) {
+            case AckPolicy.SEND:
+                sim.cancel_ack_timer();
+                send_ack(ack);
+                break;
+            case AckPolicy.START_TIMER:
+                if (!sim.isactive_ack_timer()) {
+                    sim.start_ack_timer();
+                }
+                break;
+            case AckPolicy.RESTART_TIMER:
+                sim.start_ack_timer();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Handles the expiration of the ACK timer according to the ACK policy
+     * @param ack acknowledgement number sent
+     */
+    final void acknowledge_timer(int ack) {
+        if (ack_policy.on_ack_timer()) {
+            send_ack(ack);
+        }
+    }
+
+    /**
+     * Sends a standalone ACK frame
+     * @param ack acknowledgement number
+     */
+    final void send_ack(int ack) {
+        ack_policy.acknowledged();
+        sim.to_physical_layer(advertise(Frame.new_Ack_Frame(ack)));
+    }
+
+    /**
+     * Get the ACK policy
+     * @return the policy
+     */
+    public AckPolicy ack_policy() {
+        return ack_policy;
+    }
+
+    /**
+     * Get the sending window controller
+     * @return the controller
+     */
+    public WindowController window_controller() {
+        return cwnd;
+    }
+
+
+/******************************************************************************/
+// Code that manages the credit based flow control
+/******************************************************************************/
+
+    /**
+     * Get the maximum number of DATA frames that the protocol can take after
+     * the acknowledged one, used to limit the window advertised
+     * @return the receiving window; max_seq if not defined by the protocol
+     */
+    int receive_window() {
+        return max_seq;
+    }
+
+    /**
+     * Adds to a frame the receiving window advertised, if the credit option 
+     * is enabled: the number of DATA frames after the acknowledged one that 
+     * the network layer can take now, limited to the receiving window
+     * @param frame DATA, ACK or NAK frame
+     * @return the frame
+     */
+    final Frame advertise(Frame frame) {
+        if (credit) {
+            frame.set_window(Math.max(0, Math.min(receive_window(), net.credit())));
+        }
+        return frame;
+    }
+
+    /**
+     * Updates the credit of the peer with the window advertised in a frame,
+     * if it refers to the current base of the sending window
+     * @param frame frame received
+     * @param base sequence number of the first frame not received by the 
+     * peer, according to the frame: ack + 1, or the NAK number
+     * @param window_base current base of the sending window
+     */
+    final void credit_received(Frame frame, int base, int window_base) {
+        if (credit && (frame.wnd() >= 0) && (base == window_base)) {
+            if ((peer_credit == 0) && (frame.wnd() > 0)) {
+                // The window opened: stop the persist timer
+                credit_probe = false;
+                if (sim.isactive_probe_timer()) {
+                    sim.cancel_probe_timer();
+                }
+            }
+            peer_credit = frame.wnd();
+        }
+    }
+
+    /**
+     * Get the number of frames that may be outstanding after the sending 
+     * window base, according to the credit of the peer; after the persist
+     * timer expires with no credit, one frame is allowed as a probe
+     * @return the number of frames allowed
+     */
+    final int credit_limit() {
+        if ((peer_credit == 0) && credit_probe) {
+            return 1;
+        }
+        return peer_credit;
+    }
+
+    /**
+     * Starts the persist timer when the peer has no credit, so that a zero 
+     * window probe is sent after one RTO
+     */
+    final void arm_persist() {
+        if (credit && (peer_credit == 0) && !credit_probe && !sim.isactive_probe_timer()) {
+            sim.start_probe_timer(current_rto());
+        }
+    }
+
+    /**
+     * Handles the expiration of the persist timer: allows one frame beyond the
+     * window as a zero window probe. Further probes are the retransmissions of
+     * this frame, spaced by the data timer, until the peer advertises credit
+     * @return true if a probe may be sent, false if the peer has credit
+     */
+    final boolean persist_timeout() {
+        if (!credit || (peer_credit > 0)) {
+            return false;
+        }
+        credit_probe = true;
+        window_probes++;
+        return true;
+    }
+
+    /**
+     * Tests if the credit based flow control is enabled (credit option)
+     * @return true if it is enabled
+     */
+    final boolean credit_enabled() {
+        return credit;
+    }
+
+    /**
+     * Get the number of zero window probes sent
+     * @return the number of probes
+     */
+    public long window_probes() {
+        return window_probes;
+    }
+        
 /******************************************************************************/
 // Code that defines default event handlers
 /******************************************************************************/
@@ -133,6 +544,21 @@ public class Base_Protocol implements Callbacks {
         sim.Log(time+" Base_Protocol.data_Timeout ignored\n");
     }
 
+    /**
+     * Default implementation for the keyed handle_Data_Timer event; the key 0
+     * is handled as the single data timer
+     * @param time  current simulation time
+     * @param key   timer key
+     */
+    @Override
+    public void handle_Data_Timer(long time, int key) {
+        if (key == 0) {
+            handle_Data_Timer(time);
+        } else {
+            sim.Log(time+" Base_Protocol.data_Timeout("+key+") ignored\n");
+        }
+    }
+
     /**
      * Default implementation for handle_ack_Timer event
      * @param time  current simulation time
@@ -142,6 +568,24 @@ public class Base_Protocol implements Callbacks {
         sim.Log(time+" Base_Protocol.ack_Timer ignored\n");
     }
 
+    /**
+     * Default implementation for handle_probe_Timer event
+     * @param time  current simulation time
+     */
+    @Override
+    public void handle_probe_Timer(long time) {
+        sim.Log(time+" Base_Protocol.probe_Timer ignored\n");
+    }
+
+    /**
+     * Default implementation for handle_network_ready event
+     * @param time  current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        sim.Log(time+" Base_Protocol.network_ready ignored\n");
+    }
+
     /**
      * Default implementation for from_physical_layer event
      * @param time  current simulation time
@@ -174,5 +618,85 @@ public class Base_Protocol implements Callbacks {
      * Reference to the network layer, to send a receive packets
      */
     final NetworkLayer net;
+
+    /**
+     * Maximum sequence number, read once from the configuration
+     */
+    final int max_seq;
+
+    /**
+     * Number of sequence numbers (max_seq + 1)
+     */
+    private final long seq_space;
+
+    /**
+     * Mask used to wrap the sequence numbers when the sequence space is a 
+     * power of two, or -1 otherwise
+     */
+    private final int seq_mask;
+
+    /**
+     * Retransmission timeout estimator
+     */
+    final RtoEstimator rto;
+
+    /**
+     * Sequence number of the frame being timed, or -1, and the time when its
+     * transmission ended
+     */
+    private int timed_seq;
+    private long timed_time;
+
+    /**
+     * Sending window controller
+     */
+    final WindowController cwnd;
+
+    /**
+     * Policy used to send standalone ACK frames; protocols may replace the
+     * default in their constructors
+     */
+    AckPolicy ack_policy;
+
+    /**
+     * True if the tail-loss probe is enabled, and the probe delay as a 
+     * multiple of the smoothed RTT
+     */
+    private final boolean tlp;
+    private final double tlp_factor;
+
+    /**
+     * True if a probe was sent since the sending window last moved
+     */
+    private boolean probe_sent;
+
+    /**
+     * Number of tail-loss probes sent
+     */
+    private long probes;
+
+    /**
+     * True if the credit based flow control is enabled; off by default,
+     * because it adds to the frames the WND field, which the channel must 
+     * know how to parse
+     */
+    private final boolean credit;
+
+    /**
+     * Number of frames the peer can take after the sending window base, as
+     * last advertised, or Integer.MAX_VALUE if unknown
+     */
+    private int peer_credit;
+
+    /**
+     * True if the persist timer expired and one frame may be sent as a zero
+     * window probe
+     */
+    private boolean credit_probe;
+
+    /**
+     * Number of zero window probes sent
+     */
+    private long window_probes;
     
 }
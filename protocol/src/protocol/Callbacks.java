@@ -30,12 +30,32 @@ public interface Callbacks {
      */
     void handle_Data_Timer(long time);
     
+    /**
+     * Data Timer event of a timer started with a key
+     * @param time current simulation time
+     * @param key timer key; 0 is the single data timer
+     */
+    void handle_Data_Timer(long time, int key);
+    
     /**
      * ACK Timer event
      * @param time current simulation time
      */
     void handle_ack_Timer(long time);
     
+    /**
+     * Probe Timer event, used to send a tail-loss probe
+     * @param time current simulation time
+     */
+    void handle_probe_Timer(long time);
+    
+    /**
+     * Event generated when the network layer has a new packet available, 
+     * after returning null in a previous call to from_network_layer
+     * @param time current simulation time
+     */
+    void handle_network_ready(long time);
+    
     /**
      * Event received when a frame is received from the physical layer
      * @param time current simulation time
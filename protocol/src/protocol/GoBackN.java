@@ -4,14 +4,31 @@
  */
 package protocol;
 
-import java.util.Objects;
 import terminal.Simulator;
 import simulator.Frame;
 import terminal.NetworkLayer;
-import terminal.Terminal;
+import terminal.Options;
 
 /**
  * Protocol 4 : Go-back-N protocol with one timer
+ * 
+ * The sending window is kept in a ring buffer indexed by (seq &amp; mask),
+ * between ack_expected (window base) and next_new (upper edge). 
+ * next_frame_to_send runs inside this interval: a timeout or a NAK only moves 
+ * it back, so the recovery does not depend on the window size or on the 
+ * payload contents.
+ * A repeated ACK frame for the frame before the window base counts as a
+ * duplicate ACK; dupack.threshold duplicates (0 disables it) trigger a fast 
+ * retransmission without waiting for the timeout. While recovering, further
+ * NAKs and duplicate ACKs for the same frame are ignored, until the window 
+ * base moves or the timer expires.
+ * With the tlp option, when the sender becomes idle with frames outstanding, 
+ * a probe timer shorter than the RTO retransmits the last frame sent once, to
+ * elicit a NAK or an ACK when the tail of a burst was lost.
+ * With the credit option, the frames carry the number of packets the 
+ * receiving network layer can take, and the sender never goes beyond this 
+ * credit; with no credit and no frames outstanding, the persist timer sends
+ * one frame as a zero window probe.
  *
  * @author 50236, 50292 and 50732
  */
@@ -19,15 +36,20 @@ public class GoBackN extends Base_Protocol implements Callbacks {
 
     public GoBackN(Simulator _sim, NetworkLayer _net) {
         super(_sim, _net);      // Calls the constructor of Base_Protocol
-        packets_from_network_layer = new String[sim.get_max_sequence()+1];
-        counter = sim.get_send_window();
+        int size = ring_size(sim.get_send_window());
+        window_mask = size - 1;
+        window = new String[size];
+        ack_expected = 0;
         next_frame_to_send = 0;
-        last_frame_not_confirmed = 0;
+        next_new = 0;
         frame_expected = 0;
-        ack_expected = 0;
-        retransmissionCounter = 0;
+        window_retransmitted = 0;
+        last_sent_new = false;
         nak_sent = false;
-                
+        dupack_threshold = Options.get_int("dupack.threshold", 3);
+        dupacks = 0;
+        recovering = false;
+        fast_retransmitted = 0;
     }
 
     /**
@@ -39,34 +61,145 @@ public class GoBackN extends Base_Protocol implements Callbacks {
     public void start_simulation(long time) {
         sim.Log("\nGo-Back-N Protocol\n\n");
         send_next_data_packet();    // Start sending the starter packets
-        
     }
-    
+
     /**
-     * Fetches the network layer for the next packets and starts it transmission
+     * Starts the transmission of the next data frame, if the channel is free
+     * and the congestion window is not full: a frame of the window being
+     * retransmitted, or a new packet from the network layer
      * @return true is started data frame transmission, false otherwise
      */
     private boolean send_next_data_packet() {
-        
-        String packet = net.from_network_layer();
-        
-        if (packet != null) {
-            
-            last_packet_sent = packet;
-            packets_from_network_layer[next_frame_to_send] = packet;
-            
-            sim.cancel_ack_timer();          
-            Frame frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-            
-            sim.to_physical_layer(frame);
-            next_frame_to_send = next_seq(next_frame_to_send);
-            
-            return true;
-              
-        } else{
-            
+        if (sim.is_sending_data()) {
+            return false;
+        }
+        if (diff_seq(ack_expected, next_frame_to_send) >= credit_limit()) {
+            return false;           // No credit from the receiver
+        }
+        if (diff_seq(ack_expected, next_frame_to_send) >= cwnd.window()) {
+            return false;           // Sending window full, also for the go-back burst
+        }
+        if (next_frame_to_send == next_new) {
+            String packet = net.from_network_layer();
+            if (packet == null) {
+                return false;
+            }
+            window[next_new & window_mask] = packet;
+            next_new = next_seq(next_new);
+            last_sent_new = true;
+        } else {
+            window_retransmitted++;
+            last_sent_new = false;
+        }
+
+        send_data_frame(next_frame_to_send);
+        next_frame_to_send = next_seq(next_frame_to_send);
+        return true;
+    }
+
+    /**
+     * Sends one DATA frame of the sending window, piggybacking the 
+     * acknowledgement of the last frame received in order
+     * @param seq sequence number of the frame
+     */
+    private void send_data_frame(int seq) {
+        sim.cancel_ack_timer();
+        ack_policy.acknowledged();      // Piggybacked acknowledgement
+        Frame frame = Frame.new_Data_Frame(seq, prev_seq(frame_expected),
+                window[seq & window_mask]);
+        sim.to_physical_layer(advertise(frame));
+    }
+
+    /**
+     * Called when the sender cannot send more frames: starts the persist 
+     * timer if the receiver has no credit, or the tail-loss probe if frames 
+     * are outstanding
+     */
+    private void sender_idle() {
+        if (credit_limit() == 0) {
+            arm_persist();
+        } else if (ack_expected != next_new) {
+            arm_probe();
+        }
+    }
+
+    /**
+     * Goes back to a frame of the sending window, to retransmit it and all 
+     * the frames sent after it
+     * @param seq sequence number of the first frame to retransmit
+     */
+    private void go_back_to(int seq) {
+        next_frame_to_send = seq;
+        rtt_timing_cancel();
+    }
+
+    /**
+     * Starts the recovery of a lost frame reported by a NAK or by duplicate 
+     * ACKs, unless it is already being recovered
+     * @param seq sequence number of the frame lost
+     * @return true if started the recovery, false if it was redundant
+     */
+    private boolean recover(int seq) {
+        if (recovering && (seq == recover_seq)) {
+            return false;
+        }
+        recovering = true;
+        recover_seq = seq;
+        dupacks = 0;
+        cwnd.on_nak();
+        go_back_to(seq);
+        return true;
+    }
+
+    /**
+     * Counts a duplicate ACK: an ACK frame for the frame before the window 
+     * base, while frames are waiting for acknowledgement
+     * @param ack acknowledgement number received
+     */
+    private void handle_dupack(int ack) {
+        if ((dupack_threshold <= 0) || (ack != prev_seq(ack_expected))
+                || (ack_expected == next_new)) {
+            return;
+        }
+        if (++dupacks >= dupack_threshold) {
+            if (recover(ack_expected)) {
+                fast_retransmitted++;
+                sim.Log(sim.get_time() + " Fast retransmit (" + ack_expected + ")\n");
+            }
+        }
+    }
+
+    /**
+     * Handles an acknowledgement: all the frames up to ack were received;
+     * slides the sending window and restarts the timer if frames remain
+     * @param time current simulation time
+     * @param ack sequence number of the last frame received in order
+     * @return true if the window moved, false otherwise
+     */
+    private boolean handle_ack(long time, int ack) {
+        if (!between(ack_expected, ack, next_new)) {
             return false;
-        }    
+        }
+        int n = diff_seq(ack_expected, ack) + 1;
+        cwnd.on_ack(n);
+        for (int i = 0; i < n; i++) {
+            window[ack_expected & window_mask] = null;
+            rtt_timing_acked(ack_expected, time);
+            ack_expected = next_seq(ack_expected);
+        }
+        window_retransmitted = 0;
+        dupacks = 0;
+        recovering = false;
+        reset_probe();
+        // A go back may have left next_frame_to_send behind the new base
+        if (diff_seq(ack_expected, next_frame_to_send) > diff_seq(ack_expected, next_new)) {
+            next_frame_to_send = ack_expected;
+        }
+        sim.cancel_data_timer();
+        if (ack_expected != next_new) {
+            start_rto_timer();
+        }
+        return true;
     }
 
     /**
@@ -78,41 +211,28 @@ public class GoBackN extends Base_Protocol implements Callbacks {
      */
     @Override
     public void handle_Data_end(long time, int seq) {
-        
         //Starts the timer to wait for an ACK
-        
-        if(!sim.isactive_data_timer())
-                sim.start_data_timer(); 
-        
-        if(retransmissionCounter == 0){
-
-            if(counter > 1){         //Counter equal to 1 means last packet to send
-               counter--;
-               send_next_data_packet();
-            }
-            else
-                counter = sim.get_send_window();
-        
-        }else {
-            if(retransmissionCounter > 1){
-
-                    String packet = packets_from_network_layer[next_frame_to_send];
-                    last_packet_sent = packet;
-                    Frame data_frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-                    next_frame_to_send = next_seq(next_frame_to_send);
-                    retransmissionCounter--;
-                    sim.to_physical_layer(data_frame);
-            }else {
-
-                retransmissionCounter = 0;
+        if (!sim.isactive_data_timer() && (ack_expected != next_new)) {
+            start_rto_timer();
+        }
+        if (last_sent_new) {
+            rtt_timing_start(seq, time);
+        }
+        if (!send_next_data_packet()) {
+            sender_idle();
+        }
+    }
 
-                if(counter == 0)
-                    counter = sim.get_send_window();
-                else
-                    send_next_data_packet();
-                
-                }  
-            }  
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network 
+     * layer, after it had no packets to send; sends it if the sending window 
+     * is not full and no retransmission is ongoing
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        send_next_data_packet();
     }
 
     /**
@@ -122,39 +242,36 @@ public class GoBackN extends Base_Protocol implements Callbacks {
      */
     @Override
     public void handle_Data_Timer(long time) {
-        
-        retransmissionCounter = diff_seq(last_frame_not_confirmed, next_frame_to_send);
-        int index = 0;
-        
-        for(int i = 0; i < sim.get_max_sequence()+1 ; i++){
-            if (Objects.equals(packets_from_network_layer[i], last_packet_sent)){
-                index = i;
-                break;
-            }
+        rto_timeout();
+        cwnd.on_timeout();
+        dupacks = 0;
+        recovering = false;
+        reset_probe();
+        go_back_to(ack_expected);
+        if (!send_next_data_packet()) {
+            sender_idle();
         }
-        
-        int i = retransmissionCounter;
-        
-         while(i>1){
-             
-             index = prev_seq(index);
-             i--;
-        }
-        //Now we know the packet that failed
-        
-        next_frame_to_send = index;
-        ack_expected = index;
-        
-        counter=sim.get_send_window()-retransmissionCounter;
-      
-        String packet = packets_from_network_layer[next_frame_to_send];
-        last_packet_sent = packet;
+    }
 
-        sim.cancel_ack_timer();    
-        Frame data_frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-        next_frame_to_send = next_seq(next_frame_to_send);
-        sim.to_physical_layer(data_frame);
- 
+    /**
+     * CALLBACK FUNCTION: handle the probe timer event; retransmit the last 
+     * frame sent, if the channel is free
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_probe_Timer(long time) {
+        if (persist_timeout()) {
+            send_next_data_packet();    // Zero window probe
+            return;
+        }
+        if ((ack_expected == next_new) || sim.is_sending_data()) {
+            return;
+        }
+        probe_transmitted();
+        window_retransmitted++;
+        last_sent_new = false;
+        send_data_frame(prev_seq(next_new));
     }
 
     /**
@@ -164,10 +281,7 @@ public class GoBackN extends Base_Protocol implements Callbacks {
      */
     @Override
     public void handle_ack_Timer(long time) {
-        
-        Frame ack = Frame.new_Ack_Frame(prev_seq(frame_expected)); //Create ACK frame
-        sim.to_physical_layer(ack);  
-        
+        acknowledge_timer(prev_seq(frame_expected));
     }
 
     /**
@@ -182,99 +296,88 @@ public class GoBackN extends Base_Protocol implements Callbacks {
         
         if (frame.kind() == Frame.DATA_FRAME) {                     // Check if it is a DATA frame
             if (frame.seq() == frame_expected) {                    // Check the sequence number
-                nak_sent = false;
-                net.to_network_layer(frame.info());
-                frame_expected = next_seq(frame_expected);
-                sim.start_ack_timer();                                  //Start ACK Timer
-               
+                if (net.can_deliver()) {        // Discard it without ACK if the receiving buffer is full
+                    nak_sent = false;
+                    net.to_network_layer(frame.info());
+                    frame_expected = next_seq(frame_expected);
+                    acknowledge_data(true, prev_seq(frame_expected));       //Start ACK Timer
+                } else if (credit_enabled()) {
+                    send_ack(prev_seq(frame_expected));     // Advertise the zero window
+                }
             }
             else{
                 if (!nak_sent){
                     nak_sent = true;
                     Frame nak = Frame.new_Nak_Frame(frame_expected);
-                    sim.to_physical_layer(nak);
-                    
+                    sim.to_physical_layer(advertise(nak));
                 }
                 else{
                     Frame ack = Frame.new_Ack_Frame(prev_seq(frame_expected));
-                    sim.to_physical_layer(ack);
+                    sim.to_physical_layer(advertise(ack));
                 }
-                    
-            }
-            
-            if(between(ack_expected, frame.ack(), next_frame_to_send)) {       //Check the acknowledge number
-                
-                sim.cancel_data_timer();
-                ack_expected = frame.ack();
-                last_frame_not_confirmed = ack_expected;
-                
-                if (prev_seq(next_frame_to_send) == last_frame_not_confirmed){    //When the send window is confirmed
-                    send_next_data_packet();
-                       
-                }
-                else {
-                    sim.start_data_timer();
-                    ack_expected = next_seq(ack_expected);
-                    counter = sim.get_send_window()-diff_seq(ack_expected, next_frame_to_send);
-                    last_frame_not_confirmed = ack_expected;
-                    if (counter>0)
-                        send_next_data_packet();             //Sends the last packet of new window
-                
-                }         
             }
+            handle_ack(time, frame.ack());
+            credit_received(frame, next_seq(frame.ack()), ack_expected);
         }
                      
         if (frame.kind() == Frame.ACK_FRAME) {         //Check if it is an ACK frame
-            
-            if(between(ack_expected, frame.ack(), next_frame_to_send)){ 
-                
-                sim.cancel_data_timer();
-                ack_expected = frame.ack();
-                last_frame_not_confirmed = ack_expected;
-                
-                if (prev_seq(next_frame_to_send) == last_frame_not_confirmed){    //When the send window is confirmed
-                    send_next_data_packet();
-                       
-                }
-                else {
-                    sim.start_data_timer();
-                    ack_expected = next_seq(ack_expected);
-                    counter = sim.get_send_window()-diff_seq(ack_expected, next_frame_to_send);
-                    last_frame_not_confirmed = ack_expected;
-                    send_next_data_packet();             //Sends the last packet of new window
-                        
-                }         
+            // An ACK advertising a zero window reports a full buffer, not a loss
+            if (!handle_ack(time, frame.ack()) && (frame.wnd() != 0)) {
+                handle_dupack(frame.ack());
             }
+            credit_received(frame, next_seq(frame.ack()), ack_expected);
         }
         
         if (frame.kind() == Frame.NAK_FRAME) {
-            
-            sim.cancel_data_timer();           //Cancel data timer
-            
             int failed_packet = frame.ack();
-            retransmissionCounter = diff_seq(failed_packet, next_frame_to_send);
-            if(failed_packet==next_frame_to_send)
-                send_next_data_packet();
-            else{
-            
-            next_frame_to_send = failed_packet;
-            last_frame_not_confirmed = failed_packet;
-            ack_expected = failed_packet;
-            
-            //Now we know the packet that failed
+            // All the frames before the failed one were received
+            handle_ack(time, prev_seq(failed_packet));
+            credit_received(frame, failed_packet, ack_expected);
+            if (between(ack_expected, failed_packet, next_new) && !recover(failed_packet)) {
+                sim.Log(time + " Nak (" + failed_packet + ") ignored: already recovering\n");
+            }
+        }
+        if (!send_next_data_packet() && !sim.is_sending_data()) {
+            sender_idle();
+        }
+    }    
 
-            counter=sim.get_send_window()-retransmissionCounter;
+    /**
+     * Get the sequence number of the oldest frame not acknowledged
+     * @return the sending window base
+     */
+    @Override
+    public int window_base() {
+        return ack_expected;
+    }
 
-            String packet = packets_from_network_layer[next_frame_to_send];
-            last_packet_sent = packet;
+    /**
+     * Get the sequence number of the next new frame to send
+     * @return the upper edge of the sending window
+     */
+    @Override
+    public int next_to_send() {
+        return next_new;
+    }
 
-            sim.cancel_ack_timer();    
-            Frame data_frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-            next_frame_to_send = next_seq(next_frame_to_send);
-            sim.to_physical_layer(data_frame);
-            }   
-        }
-    }    
+    /**
+     * Get the number of frames retransmitted since the sending window base 
+     * last moved
+     * @return the number of retransmissions in the current window
+     */
+    @Override
+    public int window_retransmissions() {
+        return window_retransmitted;
+    }
+
+    /**
+     * Get the number of fast retransmissions triggered by duplicate ACKs
+     * @return the number of fast retransmissions
+     */
+    @Override
+    public long fast_retransmissions() {
+        return fast_retransmitted;
+    }
 
     /**
      * CALLBACK FUNCTION: handle the end of the simulation
@@ -298,24 +401,30 @@ public class GoBackN extends Base_Protocol implements Callbacks {
     //final NetworkLayer net;    -  Inherited from Base_Protocol
     
     /**
-     * Array of strings which saves the received packets from the network layer
+     * Mask used to index the sending window ring buffer
      */
-    String[] packets_from_network_layer;   
-    
+    private final int window_mask;
+
     /**
-     * Expected sequence number of the next data frame received
+     * Packets of the sending window, indexed by (seq &amp; window_mask)
      */
-    private int last_frame_not_confirmed;
+    private final String[] window;
     
     /**
-     * Last packet that was sent
+     * Sequence number of the oldest frame not acknowledged (window base)
      */
-    private String last_packet_sent;
+    private int ack_expected;
     
     /**
-     * Sequence number of the next data frame
+     * Sequence number of the next data frame transmitted; behind next_new
+     * while retransmitting
      */
     private int next_frame_to_send;   
+
+    /**
+     * Sequence number of the next new data frame (window upper edge)
+     */
+    private int next_new;
   
     /**
      * Expected sequence number of the next data frame received
@@ -323,23 +432,42 @@ public class GoBackN extends Base_Protocol implements Callbacks {
     private int frame_expected;
     
     /**
-     * Expected ACK frame to receive
-     */
-    private int ack_expected;
-    
-    /**
-     * Counter of the send_window
+     * Number of frames retransmitted since the window base last moved
      */
-    private int counter;
-    
+    private int window_retransmitted;
+
     /**
-     * Counter of the retransmission
+     * True if the last data frame sent was new, and may be used to measure 
+     * the RTT
      */
-    private int retransmissionCounter;
+    private boolean last_sent_new;
     
     /**
      * True if it has already sent a NAK frame, False otherwise
      */
     private boolean nak_sent;
+
+    /**
+     * Number of duplicate ACKs that trigger a fast retransmission; 0 disables
+     * the fast retransmission
+     */
+    private final int dupack_threshold;
+
+    /**
+     * Number of duplicate ACKs received for the current window base
+     */
+    private int dupacks;
+
+    /**
+     * True while recovering the frame recover_seq, after a NAK or a fast 
+     * retransmission; cleared when the window base moves or on timeout
+     */
+    private boolean recovering;
+    private int recover_seq;
+
+    /**
+     * Number of fast retransmissions
+     */
+    private long fast_retransmitted;
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,376 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package protocol;
+
+import terminal.Simulator;
+import simulator.Frame;
+import terminal.NetworkLayer;
+
+/**
+ * Protocol 6 : N-channel Stop &amp; Wait protocol (HARQ style)
+ *
+ * Runs N interleaved stop &amp; wait processes, each with a 1-bit sequence
+ * number and its own timer (key = process number). The frames of process p
+ * carry the sequence number 2*p + bit, so the maximum sequence number must be
+ * at least 2*N - 1. New packets are assigned to the processes in round robin
+ * order, which lets the receiver restore the packet order: it keeps one
+ * packet per process and delivers them following the same round robin order.
+ * Every DATA frame is acknowledged individually, with the sequence number
+ * received, in a standalone ACK frame or piggybacked in the next DATA frame.
+ * The number of sending processes is the sending window and the number of
+ * receiving processes is the receiving window; they must match the peer's.
+ * In the unordered delivery mode of the network layer, the reorder stage is
+ * bypassed and each packet is delivered as soon as it is received.
+ */
+public class NChannelStopWait extends Base_Protocol implements Callbacks {
+
+    public NChannelStopWait(Simulator _sim, NetworkLayer _net) {
+        super(_sim, _net);      // Calls the constructor of Base_Protocol
+
+        // Initialize object fields
+        snd_procs = processes(sim.get_send_window());
+        rcv_procs = processes(sim.get_recv_window());
+        snd_packet = new String[snd_procs];
+        snd_bit = new int[snd_procs];
+        snd_resent = new boolean[snd_procs];
+        rtx_pending = new boolean[snd_procs];
+        rtx_queue = new int[snd_procs];
+        rtx_head = 0;
+        rtx_count = 0;
+        next_proc = 0;
+        busy = 0;
+        rcv_packet = new String[rcv_procs];
+        rcv_bit = new int[rcv_procs];
+        deliver_proc = 0;
+        last_ack = 1;       // Process 0, bit 1: acknowledges nothing yet
+    }
+
+    /**
+     * Limits the number of processes to the ones that fit in the sequence
+     * number space
+     * @param window window size configured
+     * @return the number of processes
+     */
+    private int processes(int window) {
+        int max = (max_seq + 1) / 2;
+        if (window > max) {
+            sim.Log("Window " + window + " needs Max. Seq. Number " + (2 * window - 1)
+                    + ": using " + max + " processes\n");
+            return max;
+        }
+        return window;
+    }
+
+    /**
+     * Sends one DATA frame of a process, piggybacking the last acknowledgement
+     * @param p process number
+     */
+    private void send_data_frame(int p) {
+        Frame frame = Frame.new_Data_Frame(2 * p + snd_bit[p], last_ack, snd_packet[p]);
+        sim.to_physical_layer(frame);
+    }
+
+    /**
+     * Starts the transmission of the next DATA frame, if the channel is free:
+     * first the frames waiting for retransmission, then a new packet from the
+     * network layer if the next process in round robin order is idle
+     * @return true if started a transmission, false otherwise
+     */
+    private boolean send_next_data_frame() {
+        if (sim.is_sending_data()) {
+            return false;
+        }
+        while (rtx_count > 0) {
+            int p = rtx_queue[rtx_head];
+            rtx_head = (rtx_head + 1) % snd_procs;
+            rtx_count--;
+            rtx_pending[p] = false;
+            if (snd_packet[p] != null) {
+                snd_resent[p] = true;
+                send_data_frame(p);
+                return true;
+            }
+        }
+        if (snd_packet[next_proc] == null) {
+            String packet = net.from_network_layer();
+            if (packet != null) {
+                int p = next_proc;
+                snd_packet[p] = packet;
+                snd_resent[p] = false;
+                busy++;
+                next_proc = (next_proc + 1) % snd_procs;
+                send_data_frame(p);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues the frame of a process for retransmission
+     * @param p process number
+     */
+    private void schedule_retransmission(int p) {
+        if ((snd_packet[p] == null) || rtx_pending[p]) {
+            return;
+        }
+        rtx_pending[p] = true;
+        rtx_queue[(rtx_head + rtx_count) % snd_procs] = p;
+        rtx_count++;
+    }
+
+    /**
+     * Handles the acknowledgement of one frame; frees its process if it is the
+     * frame the process is waiting for
+     * @param ack sequence number of the frame acknowledged
+     * @param time current simulation time
+     */
+    private void handle_ack(int ack, long time) {
+        int p = ack / 2;
+        if ((ack < 0) || (p >= snd_procs) || (snd_packet[p] == null)
+                || ((ack & 1) != snd_bit[p])) {
+            return;     // Old or duplicated acknowledgement
+        }
+        sim.cancel_data_timer(p);
+        rtt_timing_acked(ack, time);
+        snd_packet[p] = null;
+        snd_bit[p] ^= 1;
+        busy--;
+    }
+
+    /**
+     * Delivers to the network layer the packets received, following the round
+     * robin order of the processes
+     */
+    private void deliver_in_order() {
+        while ((rcv_packet[deliver_proc] != null) && net.can_deliver()) {
+            net.to_network_layer(rcv_packet[deliver_proc]);
+            rcv_packet[deliver_proc] = null;
+            deliver_proc = (deliver_proc + 1) % rcv_procs;
+        }
+    }
+
+    /**
+     * Handles the reception of a DATA frame by one of the receiving processes
+     * @param seq sequence number of the frame
+     * @param info packet received
+     * @return true if the frame must be acknowledged, false otherwise
+     */
+    private boolean receive_data(int seq, String info) {
+        int p = seq / 2;
+        if (p >= rcv_procs) {
+            sim.Log("Frame " + seq + " for process " + p + " ignored: only "
+                    + rcv_procs + " processes\n");
+            return false;
+        }
+        if ((seq & 1) != rcv_bit[p]) {
+            return true;        // Duplicated frame: its ACK was lost
+        }
+        if (rcv_packet[p] != null) {
+            return false;       // Previous packet not delivered yet: wait for the retransmission
+        }
+        if (net.unordered()) {
+            if (!net.can_deliver()) {
+                return false;   // Buffer full: wait for the retransmission
+            }
+            net.to_network_layer(info);     // Unordered delivery
+            rcv_bit[p] ^= 1;
+            return true;
+        }
+        rcv_packet[p] = info;
+        rcv_bit[p] ^= 1;
+        return true;
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the beginning of the simulation event
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void start_simulation(long time) {
+        sim.Log("\nN-channel Stop&Wait Protocol (" + snd_procs + " sending, "
+                + rcv_procs + " receiving processes)\n\n");
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the end of Data frame transmission, start the
+     * timer of the process and send the next frame
+     *
+     * @param time current simulation time
+     * @param seq sequence number of the Data frame transmitted
+     */
+    @Override
+    public void handle_Data_end(long time, int seq) {
+        int p = seq / 2;
+        if ((p < snd_procs) && (snd_packet[p] != null) && ((seq & 1) == snd_bit[p])) {
+            if (sim.isactive_data_timer(p)) {
+                sim.cancel_data_timer(p);
+            }
+            sim.start_data_timer(p);
+            if (!snd_resent[p]) {
+                rtt_timing_start(seq, time);
+            }
+        }
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the timer event of one process; retransmit
+     * its frame
+     *
+     * @param time current simulation time
+     * @param key process number
+     */
+    @Override
+    public void handle_Data_Timer(long time, int key) {
+        if ((key < snd_procs) && (snd_packet[key] != null)) {
+            rtt_timing_cancel();
+            schedule_retransmission(key);
+        }
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the single data timer event; not used
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_Data_Timer(long time) {
+        sim.Log(time + " Data Timeout not expected\n");
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network
+     * layer, after it had no packets to send
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the reception of a frame from the physical
+     * layer
+     *
+     * @param time current simulation time
+     * @param frame frame received
+     */
+    @Override
+    public void from_physical_layer(long time, Frame frame) {
+        if (frame.kind() == Frame.DATA_FRAME) {
+            handle_ack(frame.ack(), time);
+            boolean ack = receive_data(frame.seq(), frame.info());
+            deliver_in_order();
+            if (ack) {
+                last_ack = frame.seq();
+                if (!send_next_data_frame()) {
+                    send_ack(last_ack);
+                }
+                return;
+            }
+        }
+
+        if (frame.kind() == Frame.ACK_FRAME) {
+            handle_ack(frame.ack(), time);
+        }
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the end of the simulation
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void end_simulation(long time) {
+        sim.Log("Stopping simulation\n");
+    }
+
+    /**
+     * Get the number of sending processes waiting for an acknowledgement
+     * @return the number of frames in flight
+     */
+    @Override
+    public int in_flight() {
+        return busy;
+    }
+
+    /* Variables */
+    /**
+     * Reference to the simulator (Terminal), to get the configuration and send
+     * commands
+     */
+    //final Simulator sim;  -  Inherited from Base_Protocol
+    /**
+     * Reference to the network layer, to send a receive packets
+     */
+    //final NetworkLayer net;    -  Inherited from Base_Protocol
+
+    /**
+     * Number of sending and receiving processes
+     */
+    private final int snd_procs, rcv_procs;
+
+    /**
+     * Packet of each sending process waiting for acknowledgement, or null if
+     * the process is idle
+     */
+    private final String[] snd_packet;
+
+    /**
+     * Sequence bit of the frame of each sending process
+     */
+    private final int[] snd_bit;
+
+    /**
+     * True for the sending processes whose frame was retransmitted, and cannot
+     * be used to measure the RTT
+     */
+    private final boolean[] snd_resent;
+
+    /**
+     * Queue of processes waiting for retransmission and flags of the
+     * processes in the queue
+     */
+    private final int[] rtx_queue;
+    private final boolean[] rtx_pending;
+    private int rtx_head, rtx_count;
+
+    /**
+     * Process that receives the next new packet
+     */
+    private int next_proc;
+
+    /**
+     * Number of sending processes waiting for acknowledgement
+     */
+    private int busy;
+
+    /**
+     * Packet received by each receiving process and not delivered yet
+     */
+    private final String[] rcv_packet;
+
+    /**
+     * Sequence bit expected by each receiving process
+     */
+    private final int[] rcv_bit;
+
+    /**
+     * Process whose packet is the next to deliver to the network layer
+     */
+    private int deliver_proc;
+
+    /**
+     * Sequence number of the last DATA frame acknowledged, piggybacked in the
+     * DATA frames sent
+     */
+    private int last_ack;
+}
@@ -0,0 +1,166 @@
+/*
+ * Sistemas de Telecomunicacoes 
+ *          2017/2018
+ */
+package protocol;
+
+/**
+ * Retransmission timeout estimator (Jacobson/Karels), using the smoothed RTT
+ * and the RTT variation with the integer scaling of the original algorithm:
+ *     SRTT = 7/8 SRTT + 1/8 R, RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R|,
+ *     RTO = SRTT + max(1, 4 RTTVAR), limited to [min, max].
+ * Each timeout doubles the RTO (exponential backoff) until a new valid sample
+ * is received; the callers must not feed samples of retransmitted frames 
+ * (Karn's rule).
+ */
+public class RtoEstimator {
+
+    /**
+     * Maximum number of consecutive RTO doublings
+     */
+    private static final int MAX_BACKOFF = 16;
+
+    /**
+     * Constructor
+     * @param _initial RTO used before the first sample
+     * @param _min minimum RTO
+     * @param _max maximum RTO
+     * @param _adaptive false to always use the initial RTO
+     */
+    public RtoEstimator(long _initial, long _min, long _max, boolean _adaptive) {
+        this.initial = _initial;
+        this.min = Math.max(1, _min);
+        this.max = Math.max(this.min, _max);
+        this.adaptive = _adaptive;
+        this.srtt8 = 0;
+        this.rttvar4 = 0;
+        this.samples = 0;
+        this.backoff = 0;
+    }
+
+    /**
+     * Changes the RTO used before the first sample, or always if not adaptive
+     * @param _initial the new initial RTO
+     */
+    public void set_initial(long _initial) {
+        this.initial = _initial;
+    }
+
+    /**
+     * Updates the estimator with a new RTT sample and clears the backoff
+     * @param rtt RTT measured for a frame that was not retransmitted
+     */
+    public void sample(long rtt) {
+        if (rtt < 0) {
+            return;
+        }
+        if (samples == 0) {
+            srtt8 = rtt << 3;
+            rttvar4 = rtt << 1;
+        } else {
+            long err = rtt - (srtt8 >> 3);
+            srtt8 += err;
+            if (err < 0) {
+                err = -err;
+            }
+            rttvar4 += err - (rttvar4 >> 2);
+        }
+        samples++;
+        backoff = 0;
+    }
+
+    /**
+     * Doubles the RTO after a timeout
+     */
+    public void backoff() {
+        if (backoff < MAX_BACKOFF) {
+            backoff++;
+        }
+    }
+
+    /**
+     * Get the current retransmission timeout, including the backoff
+     * @return the RTO
+     */
+    public long rto() {
+        if (!adaptive) {
+            return initial;
+        }
+        long base = (samples == 0) ? initial
+                : (srtt8 >> 3) + Math.max(1, rttvar4);
+        base = Math.max(min, Math.min(max, base));
+        return Math.min(max, base << backoff);
+    }
+
+    /**
+     * Get the smoothed RTT
+     * @return the SRTT, or 0 without samples
+     */
+    public long srtt() {
+        return srtt8 >> 3;
+    }
+
+    /**
+     * Get the RTT variation
+     * @return the RTTVAR, or 0 without samples
+     */
+    public long rttvar() {
+        return rttvar4 >> 2;
+    }
+
+    /**
+     * Get the number of valid samples received
+     * @return the number of samples
+     */
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * Returns a string with the estimator state
+     * @return string with the estimator state
+     */
+    @Override
+    public String toString() {
+        return "RTO=" + rto() + " SRTT=" + srtt() + " RTTVAR=" + rttvar()
+                + " samples=" + samples + (adaptive ? "" : " (fixed)");
+    }
+
+
+    /* Variables */
+
+    /**
+     * RTO used before the first sample, or always if not adaptive
+     */
+    private long initial;
+
+    /**
+     * Limits of the RTO
+     */
+    private final long min, max;
+
+    /**
+     * False to use a fixed RTO
+     */
+    private final boolean adaptive;
+
+    /**
+     * Smoothed RTT scaled by 8
+     */
+    private long srtt8;
+
+    /**
+     * RTT variation scaled by 4
+     */
+    private long rttvar4;
+
+    /**
+     * Number of valid samples
+     */
+    private long samples;
+
+    /**
+     * Number of RTO doublings since the last valid sample
+     */
+    private int backoff;
+}
@@ -7,10 +7,28 @@ package protocol;
 import terminal.Simulator;
 import simulator.Frame;
 import terminal.NetworkLayer;
-import terminal.Terminal;
 
 /**
  * Protocol 5 : Selective Repeat protocol
+ * 
+ * The sending and receiving windows are kept in ring buffers indexed by 
+ * (seq &amp; mask). Each DATA frame has its own timer, whose key is the index
+ * of the frame in the sending ring buffer; a frame is retransmitted alone 
+ * when its timer expires or when a NAK for it is received. The receiver 
+ * buffers the frames received out of order inside its window and sends one
+ * NAK for the first missing frame.
+ * The RTT is measured on the frames acknowledged without retransmission, to
+ * set the delay of the tail-loss probe.
+ * With the tlp option, when the sender becomes idle with frames outstanding, 
+ * a probe timer shorter than the RTO retransmits the last frame sent once, to
+ * elicit a NAK or an ACK when the tail of a burst was lost.
+ * With the credit option, the frames carry the number of packets the 
+ * receiving network layer can take, limited to the receiving window, and no
+ * new frames are sent beyond this credit; with no credit, the persist timer 
+ * sends one frame as a zero window probe.
+ * In the unordered delivery mode of the network layer, the frames received 
+ * inside the receiving window are delivered immediately; the window still
+ * slides in order, so the acknowledgements are not changed.
  *
  * @author 50236, 50292 and 50732
  */
@@ -20,6 +38,149 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
         super(_sim, _net);      // Calls the constructor of Base_Protocol
 
         // Initialize object fields
+        send_window = sim.get_send_window();
+        recv_window = sim.get_recv_window();
+        int snd_size = ring_size(send_window);
+        snd_mask = snd_size - 1;
+        snd_packet = new String[snd_size];
+        snd_seq = new int[snd_size];
+        snd_acked = new boolean[snd_size];
+        snd_resent = new boolean[snd_size];
+        rtx_pending = new boolean[snd_size];
+        rtx_queue = new int[snd_size];
+        rtx_head = 0;
+        rtx_count = 0;
+        int rcv_size = ring_size(recv_window);
+        rcv_mask = rcv_size - 1;
+        rcv_packet = new String[rcv_size];
+        rcv_arrived = new boolean[rcv_size];
+        ack_expected = 0;
+        next_frame_to_send = 0;
+        nbuffered = 0;
+        frame_expected = 0;
+        nak_sent = false;
+        ack_policy = AckPolicy.configured(AckPolicy.Mode.TIMER);
+    }
+
+    /**
+     * Sends one DATA frame, piggybacking the acknowledgement of the last
+     * frame received in order
+     * @param seq sequence number of the frame
+     */
+    private void send_data_frame(int seq) {
+        sim.cancel_ack_timer();
+        ack_policy.acknowledged();      // Piggybacked acknowledgement
+        Frame frame = Frame.new_Data_Frame(seq, prev_seq(frame_expected),
+                snd_packet[seq & snd_mask]);
+        sim.to_physical_layer(advertise(frame));
+    }
+
+    /**
+     * Starts the transmission of the next DATA frame, if the channel is free:
+     * first the frames waiting for retransmission, then new packets from the
+     * network layer while the sending window is not full
+     * @return true if started a transmission, false otherwise
+     */
+    private boolean send_next_data_frame() {
+        if (sim.is_sending_data()) {
+            return false;
+        }
+        while (rtx_count > 0) {
+            int seq = rtx_queue[rtx_head];
+            rtx_head = (rtx_head + 1) & snd_mask;
+            rtx_count--;
+            rtx_pending[seq & snd_mask] = false;
+            if (between(ack_expected, seq, next_frame_to_send) && !snd_acked[seq & snd_mask]) {
+                snd_resent[seq & snd_mask] = true;
+                rtt_timing_cancel();        // Karn's rule
+                send_data_frame(seq);
+                return true;
+            }
+        }
+        if (nbuffered < Math.min(Math.min(send_window, cwnd.window()), credit_limit())) {
+            String packet = net.from_network_layer();
+            if (packet != null) {
+                int idx = next_frame_to_send & snd_mask;
+                snd_packet[idx] = packet;
+                snd_seq[idx] = next_frame_to_send;
+                snd_acked[idx] = false;
+                snd_resent[idx] = false;
+                nbuffered++;
+                send_data_frame(next_frame_to_send);
+                next_frame_to_send = next_seq(next_frame_to_send);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Called when the sender cannot send more frames: starts the persist 
+     * timer if the receiver has no credit, or the tail-loss probe if frames 
+     * are outstanding
+     */
+    private void sender_idle() {
+        if (credit_limit() == 0) {
+            arm_persist();
+        } else if (nbuffered > 0) {
+            arm_probe();
+        }
+    }
+
+    /**
+     * Queues a frame of the sending window for retransmission
+     * @param seq sequence number of the frame
+     */
+    private void schedule_retransmission(int seq) {
+        int idx = seq & snd_mask;
+        if (!between(ack_expected, seq, next_frame_to_send) || snd_acked[idx]
+                || rtx_pending[idx]) {
+            return;
+        }
+        rtx_pending[idx] = true;
+        rtx_queue[(rtx_head + rtx_count) & snd_mask] = seq;
+        rtx_count++;
+    }
+
+    /**
+     * Handles a cumulative acknowledgement: all the frames up to ack were 
+     * received; slides the sending window and cancels their timers
+     * @param ack sequence number of the last frame received in order
+     * @param time current simulation time
+     */
+    private void handle_ack(int ack, long time) {
+        while (between(ack_expected, ack, next_frame_to_send)) {
+            int idx = ack_expected & snd_mask;
+            snd_acked[idx] = true;
+            snd_packet[idx] = null;
+            sim.cancel_data_timer(idx);
+            rtt_timing_acked(ack_expected, time);
+            cwnd.on_ack(1);
+            nbuffered--;
+            ack_expected = next_seq(ack_expected);
+            reset_probe();
+        }
+    }
+
+    /**
+     * Delivers to the network layer the frames buffered in order, sliding the
+     * receiving window; the frames already delivered in the unordered mode 
+     * only slide the window
+     */
+    private void deliver_in_order() {
+        while (rcv_arrived[frame_expected & rcv_mask]) {
+            int idx = frame_expected & rcv_mask;
+            if (rcv_packet[idx] != null) {
+                if (!net.can_deliver()) {
+                    break;
+                }
+                net.to_network_layer(rcv_packet[idx]);
+            }
+            rcv_arrived[idx] = false;
+            rcv_packet[idx] = null;
+            frame_expected = next_seq(frame_expected);
+            nak_sent = false;
+        }
     }
 
     /**
@@ -30,7 +191,7 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
     @Override
     public void start_simulation(long time) {
         sim.Log("\nSelective Repeat Protocol\n\n");
-        sim.Log("\nNot implemented yet\n\n");
+        send_next_data_frame();
     }
 
     /**
@@ -42,17 +203,64 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
      */
     @Override
     public void handle_Data_end(long time, int seq) {
-        sim.Log("handle_Data_end not implemented\n");
+        int idx = seq & snd_mask;
+        if (between(ack_expected, seq, next_frame_to_send) && !snd_acked[idx]) {
+            if (sim.isactive_data_timer(idx)) {
+                sim.cancel_data_timer(idx);
+            }
+            sim.start_data_timer(idx);
+            if (!snd_resent[idx]) {
+                rtt_timing_start(seq, time);
+            }
+        }
+        if (!send_next_data_frame()) {
+            sender_idle();
+        }
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the timer event of one frame; retransmit it
+     *
+     * @param time current simulation time
+     * @param key index of the frame in the sending ring buffer
+     */
+    @Override
+    public void handle_Data_Timer(long time, int key) {
+        cwnd.on_timeout();
+        reset_probe();
+        rtt_timing_cancel();
+        schedule_retransmission(snd_seq[key]);
+        send_next_data_frame();
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the probe timer event; retransmit the last 
+     * frame sent
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_probe_Timer(long time) {
+        if (persist_timeout()) {
+            send_next_data_frame();     // Zero window probe
+            return;
+        }
+        if (nbuffered == 0) {
+            return;
+        }
+        probe_transmitted();
+        schedule_retransmission(prev_seq(next_frame_to_send));
+        send_next_data_frame();
     }
 
     /**
-     * CALLBACK FUNCTION: handle the timer event; retransmit failed frames
+     * CALLBACK FUNCTION: handle the single data timer event; not used
      *
      * @param time current simulation time
      */
     @Override
     public void handle_Data_Timer(long time) {
-        sim.Log("handle_Data_Timeout not implemented\n");
+        sim.Log(time + " Data Timeout not expected\n");
     }
 
     /**
@@ -62,7 +270,18 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
      */
     @Override
     public void handle_ack_Timer(long time) {
-        sim.Log("from_ack_Timer not implemented\n");
+        acknowledge_timer(prev_seq(frame_expected));
+    }
+
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network 
+     * layer, after it had no packets to send
+     *
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        send_next_data_frame();
     }
 
     /**
@@ -74,7 +293,48 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
      */
     @Override
     public void from_physical_layer(long time, Frame frame) {
-        sim.Log("from_physical_layer not implemented\n");
+        if (frame.kind() == Frame.DATA_FRAME) {
+            int seq = frame.seq();
+            if ((seq != frame_expected) && !nak_sent) {
+                // Gap detected: ask for the first missing frame once
+                nak_sent = true;
+                sim.to_physical_layer(advertise(Frame.new_Nak_Frame(frame_expected)));
+            }
+            if (between(frame_expected, seq, add_seq(frame_expected, recv_window))
+                    && !rcv_arrived[seq & rcv_mask]) {
+                rcv_arrived[seq & rcv_mask] = true;
+                if ((seq != frame_expected) && net.unordered() && net.can_deliver()) {
+                    net.to_network_layer(frame.info());     // Unordered delivery
+                } else {
+                    rcv_packet[seq & rcv_mask] = frame.info();
+                }
+            }
+            int before = frame_expected;
+            deliver_in_order();
+            if (credit_enabled() && rcv_arrived[frame_expected & rcv_mask]) {
+                send_ack(prev_seq(frame_expected));     // Blocked: advertise the window
+            } else {
+                acknowledge_data(frame_expected != before, prev_seq(frame_expected));
+            }
+            handle_ack(frame.ack(), time);
+            credit_received(frame, next_seq(frame.ack()), ack_expected);
+        }
+
+        if (frame.kind() == Frame.ACK_FRAME) {
+            handle_ack(frame.ack(), time);
+            credit_received(frame, next_seq(frame.ack()), ack_expected);
+        }
+
+        if (frame.kind() == Frame.NAK_FRAME) {
+            // All the frames before the missing one were received
+            handle_ack(prev_seq(frame.ack()), time);
+            credit_received(frame, frame.ack(), ack_expected);
+            cwnd.on_nak();
+            schedule_retransmission(frame.ack());
+        }
+        if (!send_next_data_frame() && !sim.is_sending_data()) {
+            sender_idle();
+        }
     }
 
     /**
@@ -87,6 +347,34 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
         sim.Log("Stopping simulation\n");
     }
 
+    /**
+     * Get the maximum number of DATA frames accepted after the acknowledged
+     * one
+     * @return the receiving window
+     */
+    @Override
+    int receive_window() {
+        return recv_window;
+    }
+
+    /**
+     * Get the sequence number of the oldest frame not acknowledged
+     * @return the sending window base
+     */
+    @Override
+    public int window_base() {
+        return ack_expected;
+    }
+
+    /**
+     * Get the sequence number of the next new frame to send
+     * @return the next sequence number
+     */
+    @Override
+    public int next_to_send() {
+        return next_frame_to_send;
+    }
+
     /* Variables */
     /**
      * Reference to the simulator (Terminal), to get the configuration and send
@@ -98,4 +386,80 @@ public class SelectiveRepeat extends Base_Protocol implements Callbacks {
      */
     //final NetworkLayer net;    -  Inherited from Base_Protocol
 
+    /**
+     * Sending and receiving window sizes
+     */
+    private final int send_window, recv_window;
+
+    /**
+     * Masks used to index the sending and receiving ring buffers
+     */
+    private final int snd_mask, rcv_mask;
+
+    /**
+     * Packets of the sending window, indexed by (seq &amp; snd_mask)
+     */
+    private final String[] snd_packet;
+
+    /**
+     * Sequence numbers of the frames of the sending window, indexed by 
+     * (seq &amp; snd_mask); used to find the frame of each timer
+     */
+    private final int[] snd_seq;
+
+    /**
+     * True for the frames of the sending window already acknowledged
+     */
+    private final boolean[] snd_acked;
+
+    /**
+     * True for the frames of the sending window that were retransmitted, and
+     * cannot be used to measure the RTT
+     */
+    private final boolean[] snd_resent;
+
+    /**
+     * Queue of sequence numbers waiting for retransmission and flags of the
+     * frames in the queue
+     */
+    private final int[] rtx_queue;
+    private final boolean[] rtx_pending;
+    private int rtx_head, rtx_count;
+
+    /**
+     * Packets received out of order, indexed by (seq &amp; rcv_mask); null for
+     * the frames already delivered in the unordered mode
+     */
+    private final String[] rcv_packet;
+
+    /**
+     * True for the frames of the receiving window already received
+     */
+    private final boolean[] rcv_arrived;
+
+    /**
+     * Sequence number of the oldest frame not acknowledged
+     */
+    private int ack_expected;
+
+    /**
+     * Sequence number of the next new data frame
+     */
+    private int next_frame_to_send;
+
+    /**
+     * Number of frames in the sending window
+     */
+    private int nbuffered;
+
+    /**
+     * Expected sequence number of the next data frame received (lower edge 
+     * of the receiving window)
+     */
+    private int frame_expected;
+
+    /**
+     * True if a NAK was sent for frame_expected
+     */
+    private boolean nak_sent;
 }
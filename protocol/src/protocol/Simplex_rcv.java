@@ -18,6 +18,7 @@ public class Simplex_rcv extends Base_Protocol implements Callbacks {
     public Simplex_rcv(Simulator _sim, NetworkLayer _net) {
         super(_sim, _net);      // Calls the constructor of Base_Protocol
         frame_expected = 0;
+        ack_policy = AckPolicy.configured(AckPolicy.Mode.IMMEDIATE);
     }
 
     /**
@@ -40,18 +41,31 @@ public class Simplex_rcv extends Base_Protocol implements Callbacks {
         
         if (frame.kind() == Frame.DATA_FRAME) {      // Check the frame kind
             
-            Frame ack = Frame.new_Ack_Frame(frame.seq()); //Create ACK frame
-            sim.to_physical_layer(ack);
+            if ((frame.seq() == frame_expected) && !net.can_deliver()) {
+                return;     // Receiving buffer full: discard it without ACK
+            }
             
-            if (frame.seq() == frame_expected) {     // Check the sequence number
+            boolean in_order = (frame.seq() == frame_expected);
+            if (in_order) {     // Check the sequence number
                 // Send the frame to the network layer
                 
                 frame_expected = next_seq(frame_expected);
                 net.to_network_layer(frame.info());
             }    
+            acknowledge_data(in_order, prev_seq(frame_expected)); //Send ACK frame
         }
     }
 
+    /**
+     * CALLBACK FUNCTION: handle the ACK timer event, used by the delayed ACK
+     * policies; send ACK frame
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_ack_Timer(long time) {
+        acknowledge_timer(prev_seq(frame_expected));
+    }
+
     /**
      * CALLBACK FUNCTION: handle the end of the simulation
      * @param time current simulation time
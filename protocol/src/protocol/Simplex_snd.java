@@ -19,7 +19,8 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
         super(_sim, _net);      // Calls the constructor of Base_Protocol
         next_frame_to_send = 0;
         frame_expected = 0;
-   
+        idle = false;
+        retransmitting = false;
     }
     
     /**
@@ -36,8 +37,11 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
             frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(0), 
                     packet);
             sim.to_physical_layer(frame);           
+            idle = false;
+            retransmitting = false;
             return true;
         }
+        idle = true;
         return false;
     }
 
@@ -60,8 +64,22 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
     public void handle_Data_end(long time, int seq) {
         
         //Starts the timer to wait for an ACK
-        sim.start_data_timer();  
-                      
+        start_rto_timer();
+        if (!retransmitting) {
+            rtt_timing_start(seq, time);
+        }
+    }
+    
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network 
+     * layer, after it had no packets to send
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        if (idle) {
+            send_next_data_packet();
+        }
     }
     
     /**
@@ -71,6 +89,8 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
     @Override
     public void handle_Data_Timer(long time) {
         
+        rto_timeout();
+        retransmitting = true;
         sim.to_physical_layer(frame);  //Retransmit failed frames
       
     }
@@ -89,6 +109,7 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
             if (frame.ack()== frame_expected) {    // Check the acknowledge number
                 frame_expected = next_seq(frame_expected); 
                 sim.cancel_data_timer();           //Cancel timer in case of right acknowledge
+                rtt_timing_acked(next_frame_to_send, time);
                 
                 //Send next data packet
                 next_frame_to_send= next_seq(next_frame_to_send);
@@ -129,6 +150,18 @@ public class Simplex_snd extends Base_Protocol implements Callbacks {
      */
     private int frame_expected;
     
+    /**
+     * True when all the packets sent were acknowledged and the network layer 
+     * had no more packets
+     */
+    private boolean idle;
+
+    /**
+     * True if the frame was retransmitted, and its acknowledgement cannot be
+     * used to measure the RTT
+     */
+    private boolean retransmitting;
+    
     /**
      * Frame that was transmitted and will be retransmitted in case of not receiving ACK frame
      */
@@ -20,7 +20,7 @@ public class StopWait extends Base_Protocol implements Callbacks {
         super(_sim, _net);      // Calls the constructor of Base_Protocol
         next_frame_to_send = 0;
         frame_expected = 0;
-        
+        retransmitting = false;
     }
     
     /**
@@ -33,19 +33,15 @@ public class StopWait extends Base_Protocol implements Callbacks {
         //   otherwise the first packet is lost in the channel
         packet = net.from_network_layer();
         if (packet != null) {
+            retransmitting = false;
             
             if(sim.isactive_ack_timer()){       
                 sim.cancel_ack_timer();
-                Frame frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-                sim.to_physical_layer(frame);  
-                return true;
-            }
-            
-            else{
-                Frame frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
-                sim.to_physical_layer(frame);       
-                return true;      
             }
+            ack_policy.acknowledged();      // Piggybacked acknowledgement
+            Frame frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
+            sim.to_physical_layer(frame);       
+            return true;
         }
         return false;
     }
@@ -70,8 +66,22 @@ public class StopWait extends Base_Protocol implements Callbacks {
     public void handle_Data_end(long time, int seq) {
          
         //Starts the timer to wait for an ACK
-        sim.start_data_timer();
-        
+        start_rto_timer();
+        if (!retransmitting) {
+            rtt_timing_start(seq, time);
+        }
+    }
+    
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network 
+     * layer, after it had no packets to send
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        if ((packet == null) && !sim.is_sending_data()) {
+            send_next_data_packet();
+        }
     }
     
     /**
@@ -81,6 +91,8 @@ public class StopWait extends Base_Protocol implements Callbacks {
     @Override
     public void handle_Data_Timer(long time) {
         
+        rto_timeout();
+        retransmitting = true;
         Frame frame = Frame.new_Data_Frame(next_frame_to_send, prev_seq(frame_expected), packet);
         sim.to_physical_layer(frame);  //Retransmit failed frames
         
@@ -93,8 +105,7 @@ public class StopWait extends Base_Protocol implements Callbacks {
     @Override
     public void handle_ack_Timer(long time) {
         
-        Frame ack = Frame.new_Ack_Frame(prev_seq(frame_expected)); //Create ACK frame
-        sim.to_physical_layer(ack);                                //Send ACK frame
+        acknowledge_timer(prev_seq(frame_expected));               //Send ACK frame
         
     }
 
@@ -107,7 +118,8 @@ public class StopWait extends Base_Protocol implements Callbacks {
     public void from_physical_layer(long time, Frame frame) {
         
         if (frame.kind() == Frame.DATA_FRAME) {                     // Check if it is a DATA frame
-            if (frame.seq() == frame_expected) {                    // Check the sequence number
+            boolean in_order = (frame.seq() == frame_expected) && net.can_deliver();
+            if (in_order) { // Check the sequence number and the buffer
                 net.to_network_layer(frame.info());
                 frame_expected = next_seq(frame_expected);
                
@@ -115,23 +127,43 @@ public class StopWait extends Base_Protocol implements Callbacks {
                 
             if (frame.ack() == next_frame_to_send){ 
                 sim.cancel_data_timer();                            //Cancel timer in case of right acknowledge
+                rtt_timing_acked(next_frame_to_send, time);
                 next_frame_to_send = next_seq(next_frame_to_send);
                 send_next_data_packet();
             }
        
-            sim.start_ack_timer();                                  //Start ACK Timer
+            acknowledge_data(in_order, prev_seq(frame_expected));   //Start ACK Timer
                
         }
                      
         if (frame.kind() == Frame.ACK_FRAME) {                      //Check if it is an ACK frame
             if (frame.ack()== next_frame_to_send) {                 //Check the acknowledge number
                 sim.cancel_data_timer();                            //Cancel timer in case of right acknowledge
+                rtt_timing_acked(next_frame_to_send, time);
                 next_frame_to_send= next_seq(next_frame_to_send);   //Send next data packet
                 send_next_data_packet();
             }
         }
     }
 
+    /**
+     * Get the sequence number of the frame waiting for acknowledgement
+     * @return the sending window base
+     */
+    @Override
+    public int window_base() {
+        return next_frame_to_send;
+    }
+
+    /**
+     * Get the sequence number of the next new frame to send
+     * @return the next sequence number
+     */
+    @Override
+    public int next_to_send() {
+        return (packet == null) ? next_frame_to_send : next_seq(next_frame_to_send);
+    }
+
     /**
      * CALLBACK FUNCTION: handle the end of the simulation
      * @param time current simulation time
@@ -167,5 +199,11 @@ public class StopWait extends Base_Protocol implements Callbacks {
      * Packet that was transmitted and will be retransmitted in case of not receiving ACK frame
      */
     String packet ;
+
+    /**
+     * True if the packet was retransmitted, and its acknowledgement cannot be
+     * used to measure the RTT
+     */
+    private boolean retransmitting;
  
 }
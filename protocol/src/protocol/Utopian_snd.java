@@ -63,6 +63,18 @@ public class Utopian_snd extends Base_Protocol implements Callbacks {
         send_next_data_packet();
     }
 
+    /**
+     * CALLBACK FUNCTION: handle the arrival of a new packet to the network 
+     * layer, after it had no packets to send
+     * @param time current simulation time
+     */
+    @Override
+    public void handle_network_ready(long time) {
+        if (!sim.is_sending_data()) {
+            send_next_data_packet();
+        }
+    }
+
     /**
      * CALLBACK FUNCTION: handle the timer event; ignores it in this case
      * @param time current simulation time
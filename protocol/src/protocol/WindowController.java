@@ -0,0 +1,161 @@
+/*
+ * Sistemas de Telecomunicacoes 
+ *          2017/2018
+ */
+package protocol;
+
+/**
+ * Additive increase / multiplicative decrease controller of the sending 
+ * window. The window starts at one frame and doubles every window 
+ * acknowledged up to a threshold (slow start), then grows one frame per 
+ * window acknowledged. A NAK halves the window and a timeout resets it to one
+ * frame; only one decrease is applied per window of frames, since the losses
+ * of the same window are usually reported several times.
+ * The window never exceeds the configured sending window, which is already 
+ * limited by the sequence space.
+ */
+public class WindowController {
+
+    /**
+     * Constructor
+     * @param _max_window maximum sending window (configured value)
+     * @param _adaptive false to always use the maximum window
+     */
+    public WindowController(int _max_window, boolean _adaptive) {
+        this.max_window = Math.max(1, _max_window);
+        this.adaptive = _adaptive;
+        this.cwnd = adaptive ? 1 : max_window;
+        this.ssthresh = max_window;
+        this.credit = 0;
+        this.acked_since_loss = max_window;
+        this.decreases = 0;
+    }
+
+    /**
+     * Get the current sending window
+     * @return the number of frames that may be in flight
+     */
+    public int window() {
+        return cwnd;
+    }
+
+    /**
+     * Get the slow start threshold
+     * @return the threshold
+     */
+    public int ssthresh() {
+        return ssthresh;
+    }
+
+    /**
+     * Get the number of window decreases
+     * @return the number of decreases
+     */
+    public long decreases() {
+        return decreases;
+    }
+
+    /**
+     * Handles the acknowledgement of new frames
+     * @param n number of frames acknowledged
+     */
+    public void on_ack(int n) {
+        if (!adaptive || (n <= 0)) {
+            return;
+        }
+        acked_since_loss += n;
+        if (cwnd < ssthresh) {
+            cwnd = Math.min(ssthresh, cwnd + n);
+            return;
+        }
+        credit += n;
+        while ((credit >= cwnd) && (cwnd < max_window)) {
+            credit -= cwnd;
+            cwnd++;
+        }
+        if (cwnd == max_window) {
+            credit = 0;
+        }
+    }
+
+    /**
+     * Handles a loss reported by a NAK: halves the window
+     */
+    public void on_nak() {
+        if (decrease()) {
+            cwnd = ssthresh;
+        }
+    }
+
+    /**
+     * Handles a data timeout: the window is reset to one frame
+     */
+    public void on_timeout() {
+        if (decrease()) {
+            cwnd = 1;
+        }
+    }
+
+    /**
+     * Starts a decrease, if none was applied in the last window
+     * @return true if the window must be decreased
+     */
+    private boolean decrease() {
+        if (!adaptive || (acked_since_loss < cwnd)) {
+            return false;
+        }
+        ssthresh = Math.max(1, cwnd / 2);
+        credit = 0;
+        acked_since_loss = 0;
+        decreases++;
+        return true;
+    }
+
+    /**
+     * Returns a string with the controller state
+     * @return string with the controller state
+     */
+    @Override
+    public String toString() {
+        return "window=" + cwnd + " ssthresh=" + ssthresh + " decreases=" + decreases
+                + (adaptive ? "" : " (fixed)");
+    }
+
+
+    /* Variables */
+
+    /**
+     * Maximum sending window
+     */
+    private final int max_window;
+
+    /**
+     * False to use a fixed window
+     */
+    private final boolean adaptive;
+
+    /**
+     * Current sending window
+     */
+    private int cwnd;
+
+    /**
+     * Slow start threshold
+     */
+    private int ssthresh;
+
+    /**
+     * Frames acknowledged towards the next additive increase
+     */
+    private int credit;
+
+    /**
+     * Frames acknowledged since the last decrease
+     */
+    private int acked_since_loss;
+
+    /**
+     * Number of window decreases
+     */
+    private long decreases;
+}
@@ -58,6 +58,7 @@ public class Frame {
         info = null;
         seq = UNDEFINED_SEQ;
         ack = UNDEFINED_SEQ;
+        wnd = UNDEFINED_SEQ;
         ackvector = null;
         sendTime = Event.UNDEF_TIME;
         recvTime = Event.UNDEF_TIME;
@@ -71,6 +72,7 @@ public class Frame {
         info = null;
         seq = UNDEFINED_SEQ;
         ack = UNDEFINED_SEQ;
+        wnd = UNDEFINED_SEQ;
         ackvector = null;
         sendTime = Event.UNDEF_TIME;
         recvTime = Event.UNDEF_TIME;
@@ -140,6 +142,15 @@ public class Frame {
         return ack;
     }
 
+    /**
+     * Get the receiving window advertised: the number of DATA frames after
+     * the acknowledged one that the receiver can take now
+     * @return the window advertised, or UNDEFINED_SEQ if not set
+     */
+    public int wnd() {
+        return wnd;
+    }
+
     /**
      * Get the information of a DATA_FRAME
      * @return the information carried
@@ -218,6 +229,9 @@ public class Frame {
         if (kind == DATA_FRAME || kind == ACK_FRAME || kind == NAK_FRAME) {
             str += " " + (ack == UNDEFINED_SEQ ? "undef ack" : ack);
         }
+        if (wnd != UNDEFINED_SEQ) {
+            str += " wnd " + wnd;
+        }
         if (ackvector != null) {
             str += " ackvec(";
             for (int i= 0; i<ackvector.length; i++) {
@@ -276,6 +290,22 @@ public class Frame {
         return true;
     }
 
+    /**
+     * Set the receiving window advertised in DATA, ACK and NAK frames; it is
+     * serialized as the field "WND n", which the channel must also parse in
+     * its copy of str_to_frame, so it is only set by the protocols when the
+     * credit option is enabled (off by default)
+     * @param wnd number of DATA frames that the receiver can take now
+     * @return true if successful, false otherwise
+     */
+    public boolean set_window(int wnd) {
+        if (wnd <= UNDEFINED_SEQ) {
+            return false;
+        }
+        this.wnd = wnd;
+        return true;
+    }
+
     /**
      * Set the acknowledgment vector value - not used
      * @param ackvector acknowledgment vector
@@ -339,6 +369,12 @@ public class Frame {
                 break;
         }
 
+        // Write the window advertised, only when set (credit option); the
+        // channel must accept the WND field
+        if (wnd != UNDEFINED_SEQ) {
+            str += " WND " + wnd;
+        }
+
         // Write sendTime
         if (sendTime != Event.UNDEF_TIME) {
             str += " SNDTIME " + sendTime;
@@ -424,6 +460,14 @@ public class Frame {
                         }   
                         ack = Event.parseInt(st.nextToken());
                         break;
+                    case "WND":
+                        if (st.countTokens() < 1) {
+                            log.Log("Received WND without enough parameters\n");
+                            reset_frame();
+                            return false;
+                        }   
+                        wnd = Event.parseInt(st.nextToken());
+                        break;
                     case "SNDTIME":
                         if (st.countTokens() < 1) {
                             log.Log("Received SNDTIME without enough parameters\n");
@@ -527,6 +571,14 @@ public class Frame {
      * ACK; if defines the missing DATA frame for NAK packets
      */
     private int ack;
+
+    /**
+     * Receiving window advertised - for DATA, ACK and NAK packets; number of 
+     * DATA frames after 'ack' that the receiver can take, or UNDEFINED_SEQ
+     * when not used; a channel that does not know the WND field rejects the
+     * frames where it is set
+     */
+    private int wnd;
     
     /**
      * Acknowledge vector, with packets received above 'ack' - for DATA and ACK
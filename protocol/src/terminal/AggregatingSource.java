@@ -0,0 +1,176 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+
+/**
+ * Traffic source that packs several packets of another source into one 
+ * frame payload, up to a size budget. The payload of an aggregate is 
+ * AGGREGATE_PREFIX followed by "length:packet" for each packet; single 
+ * packets are sent unchanged, except those that start with AGGREGATE_PREFIX
+ * or ESCAPED, which get another MARK. When fewer packets than the budget are
+ * available, the first one waits at most the hold time for more. The packets
+ * are restored by a DeaggregatingSink.
+ */
+public class AggregatingSource implements TrafficSource {
+
+    /**
+     * Character that starts the aggregates and the escaped packets
+     */
+    static final char MARK = '~';
+
+    /**
+     * Prefix of the aggregates
+     */
+    static final String AGGREGATE_PREFIX = "~A";
+
+    /**
+     * Start of the escaped packets
+     */
+    static final String ESCAPED = "~~";
+
+    /**
+     * Constructor
+     * @param _inner source of the packets aggregated
+     * @param _budget maximum payload length
+     * @param _hold maximum time a packet waits for others
+     */
+    AggregatingSource(TrafficSource _inner, int _budget, long _hold) {
+        this.inner = _inner;
+        this.budget = _budget;
+        this.hold = Math.max(0, _hold);
+        this.buf = new StringBuilder(_budget);
+        this.count = 0;
+        this.pending = null;
+    }
+
+    /**
+     * Escapes a packet sent alone that could be confused with an aggregate
+     * @param packet the packet
+     * @return the payload sent
+     */
+    static String escape(String packet) {
+        return (packet.startsWith(AGGREGATE_PREFIX) || packet.startsWith(ESCAPED)) ? MARK + packet : packet;
+    }
+
+    @Override
+    public String poll(long time) {
+        // Collect the packets available while they fit in the budget
+        while (true) {
+            if (pending == null) {
+                pending = inner.poll(time);
+                if (pending == null) {
+                    break;
+                }
+            }
+            int len = pending.length() + Integer.toString(pending.length()).length() + 1;
+            int used = (count == 0) ? AGGREGATE_PREFIX.length() : buf.length();
+            if ((count > 0) && (used + len > budget)) {
+                break;      // Full: pending goes in the next aggregate
+            }
+            if (count == 0) {
+                buf.setLength(0);
+                buf.append(AGGREGATE_PREFIX);
+                first_time = time;
+                first = pending;
+            }
+            buf.append(pending.length()).append(':').append(pending);
+            count++;
+            pending = null;
+        }
+        if (count == 0) {
+            return null;
+        }
+        boolean full = (pending != null);
+        boolean ended = (inner.next_arrival() == Event.UNDEF_TIME);
+        if (!full && !ended && (time - first_time < hold)) {
+            return null;    // Wait for more packets
+        }
+        String out = (count == 1) ? escape(first) : buf.toString();
+        aggregates++;
+        packets += count;
+        count = 0;
+        first = null;
+        return out;
+    }
+
+    @Override
+    public long next_arrival() {
+        if (pending != null) {
+            return first_time;
+        }
+        long next = inner.next_arrival();
+        if (count == 0) {
+            return next;
+        }
+        long deadline = first_time + hold;
+        return ((next == Event.UNDEF_TIME) || (deadline < next)) ? deadline : next;
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+    }
+
+    /**
+     * Get the average number of packets per payload sent
+     * @return the average, or 0 if none was sent
+     */
+    double packets_per_frame() {
+        return (aggregates == 0) ? 0 : ((double) packets) / aggregates;
+    }
+
+    /**
+     * Returns a string with the aggregation counters
+     * @return string with the counters
+     */
+    @Override
+    public String toString() {
+        return "Aggregation: " + packets + " packets in " + aggregates + " frames ("
+                + String.format("%.2f", packets_per_frame()) + " per frame)";
+    }
+
+
+    /* Variables */
+
+    /**
+     * Source of the packets aggregated
+     */
+    private final TrafficSource inner;
+
+    /**
+     * Maximum payload length
+     */
+    private final int budget;
+
+    /**
+     * Maximum time a packet waits for others
+     */
+    private final long hold;
+
+    /**
+     * Aggregate being built
+     */
+    private final StringBuilder buf;
+
+    /**
+     * Number of packets in the aggregate being built, the first one and the 
+     * time when it was collected
+     */
+    private int count;
+    private String first;
+    private long first_time;
+
+    /**
+     * Packet taken from the source that did not fit in the aggregate
+     */
+    private String pending;
+
+    /**
+     * Number of payloads and packets sent
+     */
+    private long aggregates, packets;
+}
@@ -0,0 +1,243 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.Deflater;
+
+/**
+ * Traffic source that compresses the payloads of another source. Each 
+ * payload is compressed alone with a raw Deflater, reused for the whole link,
+ * primed with a dictionary shared with the receiver; it is sent as 
+ * COMPRESSED_PREFIX followed by the compressed bytes in base64 when this is
+ * shorter than the original. The payloads that start with COMPRESSED_PREFIX 
+ * or ESCAPED get another MARK.
+ * Compression switches itself off when, over a window of WINDOW payloads, the
+ * space saved is below the minimum gain or the CPU time per byte saved is 
+ * above the maximum cost; while off, one payload in PROBE_INTERVAL is still
+ * compressed to measure if it pays again. The payloads are restored by a
+ * DecompressingSink.
+ */
+public class CompressingSource implements TrafficSource {
+
+    /**
+     * Character that starts the compressed and the escaped payloads
+     */
+    static final char MARK = '~';
+
+    /**
+     * Prefix of the compressed payloads
+     */
+    static final String COMPRESSED_PREFIX = "~Z";
+
+    /**
+     * Start of the escaped payloads
+     */
+    static final String ESCAPED = "~~";
+
+    /**
+     * Default dictionary, with the strings common in the synthetic payloads
+     */
+    static final String DEFAULT_DICTIONARY
+            = "xxxxxxxxxxxxxxxx_0123456789_~A~F1:2:3:4:5:6:7:8:9:10:11:12:";
+
+    /**
+     * Number of payloads measured before deciding to switch on or off
+     */
+    private static final int WINDOW = 64;
+
+    /**
+     * Interval between the payloads compressed to measure while switched off
+     */
+    private static final int PROBE_INTERVAL = 16;
+
+    /**
+     * Reads the dictionary configured in the option protocol.compress.dict 
+     * (a file name), or returns the default dictionary
+     * @param root reference to the main window, used to log errors
+     * @return the dictionary
+     */
+    static byte[] dictionary(Terminal root) {
+        String file = Options.get_string("compress.dict", null);
+        if (file != null) {
+            try {
+                return java.nio.file.Files.readAllBytes(java.nio.file.Paths.get(file));
+            } catch (java.io.IOException e) {
+                root.Log("Error reading compression dictionary " + file + ": " + e + "\n");
+            }
+        }
+        return DEFAULT_DICTIONARY.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Constructor
+     * @param _inner source of the payloads
+     * @param _dict dictionary shared with the receiver
+     * @param _max_length maximum payload length
+     * @param _min_gain minimum fraction of the size saved to keep compressing
+     * @param _max_cost maximum CPU time in nanoseconds per byte saved
+     */
+    CompressingSource(TrafficSource _inner, byte[] _dict, int _max_length,
+            double _min_gain, double _max_cost) {
+        this.inner = _inner;
+        this.dict = _dict;
+        this.max_length = _max_length;
+        this.min_gain = _min_gain;
+        this.max_cost = _max_cost;
+        this.deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        this.out = new byte[4 * _max_length];
+        this.enabled = true;
+    }
+
+    @Override
+    public String poll(long time) {
+        String p = inner.poll(time);
+        if (p == null) {
+            return null;
+        }
+        payloads++;
+        if (enabled || ((payloads % PROBE_INTERVAL) == 0)) {
+            String z = compress(p);
+            if (z != null) {
+                compressed++;
+                return z;
+            }
+        }
+        return (p.startsWith(COMPRESSED_PREFIX) || p.startsWith(ESCAPED)) ? MARK + p : p;
+    }
+
+    /**
+     * Compresses a payload and updates the measurements
+     * @param p the payload
+     * @return the compressed payload, or null if it is not shorter
+     */
+    private String compress(String p) {
+        long start = System.nanoTime();
+        byte[] in = p.getBytes(StandardCharsets.UTF_8);
+        deflater.reset();
+        deflater.setDictionary(dict);
+        deflater.setInput(in);
+        deflater.finish();
+        int n = 0;
+        while (!deflater.finished() && (n < out.length)) {
+            n += deflater.deflate(out, n, out.length - n);
+        }
+        String z = null;
+        if (deflater.finished()) {
+            z = COMPRESSED_PREFIX + Base64.getEncoder().withoutPadding()
+                    .encodeToString(java.util.Arrays.copyOf(out, n));
+            if ((z.length() >= p.length()) || (z.length() > max_length)) {
+                z = null;
+            }
+        }
+        // Measure
+        win_count++;
+        win_in += p.length();
+        win_out += (z == null) ? p.length() : z.length();
+        win_nanos += System.nanoTime() - start;
+        if (win_count >= WINDOW) {
+            decide();
+        }
+        return z;
+    }
+
+    /**
+     * Decides if the compression is kept on, at the end of a measurement 
+     * window
+     */
+    private void decide() {
+        long saved = win_in - win_out;
+        double gain = (win_in == 0) ? 0 : ((double) saved) / win_in;
+        double cost = (saved <= 0) ? Double.MAX_VALUE : ((double) win_nanos) / saved;
+        boolean on = (gain >= min_gain) && (cost <= max_cost);
+        if (on != enabled) {
+            switches++;
+        }
+        enabled = on;
+        last_gain = gain;
+        bytes_in += win_in;
+        bytes_out += win_out;
+        win_count = 0;
+        win_in = 0;
+        win_out = 0;
+        win_nanos = 0;
+    }
+
+    @Override
+    public long next_arrival() {
+        return inner.next_arrival();
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        inner.close();
+    }
+
+    /**
+     * Returns a string with the compression counters
+     * @return string with the counters
+     */
+    @Override
+    public String toString() {
+        return "Compression: " + compressed + " of " + payloads + " payloads compressed, "
+                + (bytes_in - bytes_out) + " of " + bytes_in + " characters measured saved, last gain "
+                + String.format("%.1f%%", 100 * last_gain) + ", " + switches + " switches"
+                + (enabled ? "" : " (off)");
+    }
+
+
+    /* Variables */
+
+    /**
+     * Source of the payloads
+     */
+    private final TrafficSource inner;
+
+    /**
+     * Dictionary shared with the receiver
+     */
+    private final byte[] dict;
+
+    /**
+     * Maximum payload length
+     */
+    private final int max_length;
+
+    /**
+     * Minimum fraction saved and maximum CPU time per byte saved
+     */
+    private final double min_gain, max_cost;
+
+    /**
+     * Compressor, reused for all the payloads
+     */
+    private final Deflater deflater;
+
+    /**
+     * Output buffer of the compressor
+     */
+    private final byte[] out;
+
+    /**
+     * True while the compression pays
+     */
+    private boolean enabled;
+
+    /**
+     * Measurements of the current window: payloads measured, input and output
+     * lengths and CPU time
+     */
+    private int win_count;
+    private long win_in, win_out, win_nanos;
+
+    /**
+     * Totals: payloads, payloads compressed, lengths measured, switches on or
+     * off and the gain of the last window
+     */
+    private long payloads, compressed, bytes_in, bytes_out, switches;
+    private double last_gain;
+}
@@ -0,0 +1,117 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.HashMap;
+import simulator.Event;
+
+/**
+ * Sink of the numbered packets generated by the synthetic traffic sources;
+ * it checks that the packets are received in order.
+ * In the unordered delivery mode it accepts the packets out of order, using
+ * the packet number as message identifier, and measures for each packet the 
+ * delay it would have waited for the missing packets before it (head-of-line
+ * blocking) if delivered in order.
+ */
+public class CounterSink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     */
+    CounterSink(Terminal _root) {
+        this.root = _root;
+        this.expected = 0;
+        this.ahead = null;
+    }
+
+    /**
+     * Accepts the packets out of order
+     */
+    void set_unordered() {
+        ahead = new HashMap<>();
+    }
+
+    @Override
+    public boolean deliver(long time, String packet) {
+        // Validate packet; the number may be followed by padding after '_'
+        try {
+            int end = packet.indexOf('_');
+            int n = Integer.parseInt((end < 0) ? packet : packet.substring(0, end));
+            if (ahead != null) {
+                return deliver_unordered(time, n);
+            }
+            if (n != expected) {
+                root.Log("\tnetwork received messages out of order\n");
+                root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            } else {
+                expected++;
+            }
+        } catch (NumberFormatException e) {
+            root.Log("\tnetwork received invalid message\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handles a packet in the unordered delivery mode; the packets received 
+     * before the missing ones are kept with their reception time until the 
+     * gap is filled, to measure the head-of-line blocking avoided
+     * @param time current simulation time
+     * @param n packet number
+     * @return true
+     */
+    private boolean deliver_unordered(long time, int n) {
+        if ((n < expected) || ahead.containsKey(n)) {
+            root.Log("\tnetwork received duplicated message " + n + "\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            return true;
+        }
+        LinkMetrics metrics = root.get_metrics();
+        if (n > expected) {
+            ahead.put(n, time);
+            if (metrics != null) {
+                metrics.delivered_ahead();
+            }
+            return true;
+        }
+        // Fills the gap: the packets waiting after it would be delivered now
+        long saved = 0;
+        do {
+            if (metrics != null) {
+                metrics.hol_avoided(saved);
+            }
+            expected++;
+            Long t = ahead.remove(expected);
+            saved = (t == null) ? -1 : time - t;
+        } while (saved >= 0);
+        return true;
+    }
+
+    @Override
+    public boolean has_room() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Expected next packet; in the unordered mode, the first packet missing
+     */
+    private int expected;
+    /**
+     * Reception time of the packets received after the first missing one, 
+     * or null in the ordered mode
+     */
+    private HashMap<Integer, Long> ahead;
+}
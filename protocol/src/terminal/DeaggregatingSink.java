@@ -0,0 +1,69 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+
+/**
+ * Traffic sink that restores the packets packed by an AggregatingSource and
+ * delivers them in order to another sink.
+ */
+public class DeaggregatingSink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     * @param _inner sink of the packets restored
+     */
+    DeaggregatingSink(Terminal _root, TrafficSink _inner) {
+        this.root = _root;
+        this.inner = _inner;
+    }
+
+    @Override
+    public boolean deliver(long time, String payload) {
+        if (!payload.startsWith(AggregatingSource.AGGREGATE_PREFIX)) {
+            if (payload.startsWith(AggregatingSource.ESCAPED)) {
+                payload = payload.substring(1);
+            }
+            return inner.deliver(time, payload);
+        }
+        boolean ok = true;
+        int pos = AggregatingSource.AGGREGATE_PREFIX.length();
+        try {
+            while (pos < payload.length()) {
+                int sep = payload.indexOf(':', pos);
+                int len = Integer.parseInt(payload.substring(pos, sep));
+                String packet = payload.substring(sep + 1, sep + 1 + len);
+                ok &= inner.deliver(time, packet);
+                pos = sep + 1 + len;
+            }
+        } catch (RuntimeException e) {
+            root.Log("\tnetwork received invalid aggregate\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            return false;
+        }
+        return ok;
+    }
+
+    @Override
+    public boolean has_room() {
+        return inner.has_room();
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+    }
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Sink of the packets restored
+     */
+    private final TrafficSink inner;
+}
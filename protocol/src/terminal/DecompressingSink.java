@@ -0,0 +1,98 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import simulator.Event;
+
+/**
+ * Traffic sink that restores the payloads compressed by a CompressingSource,
+ * using a raw Inflater reused for the whole link and the same dictionary, and
+ * delivers them to another sink.
+ */
+public class DecompressingSink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     * @param _inner sink of the payloads restored
+     * @param _dict dictionary shared with the sender
+     */
+    DecompressingSink(Terminal _root, TrafficSink _inner, byte[] _dict) {
+        this.root = _root;
+        this.inner = _inner;
+        this.dict = _dict;
+        this.inflater = new Inflater(true);
+        this.out = new byte[4096];
+    }
+
+    @Override
+    public boolean deliver(long time, String payload) {
+        if (payload.startsWith(CompressingSource.ESCAPED)) {
+            return inner.deliver(time, payload.substring(1));
+        }
+        if (!payload.startsWith(CompressingSource.COMPRESSED_PREFIX)) {
+            return inner.deliver(time, payload);
+        }
+        try {
+            byte[] in = Base64.getDecoder().decode(
+                    payload.substring(CompressingSource.COMPRESSED_PREFIX.length()));
+            inflater.reset();
+            inflater.setDictionary(dict);
+            inflater.setInput(in);
+            int n = 0;
+            while (!inflater.finished()) {
+                if (n == out.length) {
+                    out = java.util.Arrays.copyOf(out, 2 * out.length);
+                }
+                int r = inflater.inflate(out, n, out.length - n);
+                if ((r == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated");
+                }
+                n += r;
+            }
+            return inner.deliver(time, new String(out, 0, n, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | DataFormatException e) {
+            root.Log("\tnetwork received invalid compressed payload\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            return false;
+        }
+    }
+
+    @Override
+    public boolean has_room() {
+        return inner.has_room();
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+        inner.close();
+    }
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Sink of the payloads restored
+     */
+    private final TrafficSink inner;
+    /**
+     * Dictionary shared with the sender
+     */
+    private final byte[] dict;
+    /**
+     * Decompressor, reused for all the payloads
+     */
+    private final Inflater inflater;
+    /**
+     * Output buffer of the decompressor
+     */
+    private byte[] out;
+}
@@ -0,0 +1,182 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Frame;
+import simulator.Log;
+
+/**
+ * Receiver side of the XOR parity forward error correction: keeps the 
+ * payloads of the DATA frames received recently and, when a parity frame
+ * arrives with exactly one frame of its group missing, rebuilds it. The
+ * recovered frame is returned followed by the frames of the group received 
+ * after it, so that a protocol that discarded them after the gap receives
+ * them again in order.
+ * The frames are given to the protocol as they arrive, so the parity only
+ * arrives after the protocol has seen the gap: Go-Back-N may already have
+ * sent a NAK, or its timer may expire, and the frames retransmitted are then
+ * received as duplicates. The recovery delivers the packets earlier, but 
+ * does not avoid the retransmission.
+ */
+class FecDecoder {
+
+    /**
+     * Constructor
+     * @param k number of DATA frames covered by each parity frame
+     * @param _max_seq maximum sequence number
+     */
+    FecDecoder(int k, int _max_seq) {
+        this.max_seq = _max_seq;
+        int size = Integer.highestOneBit(Math.max(1, 4 * k - 1)) << 1;
+        mask = size - 1;
+        seqs = new int[size];
+        payloads = new String[size];
+        java.util.Arrays.fill(seqs, -1);
+        acc = new byte[ParityCodec.BLOCK_BYTES];
+        block = new byte[ParityCodec.BLOCK_BYTES];
+        last_ack = 0;
+    }
+
+    /**
+     * Registers a DATA frame received, removing the escape of the payload
+     * @param frame the frame received, which is modified
+     */
+    void data_received(Frame frame) {
+        String payload = ParityCodec.unescape(frame.info());
+        if (payload != frame.info()) {
+            frame.set_DATA_frame(frame.seq(), frame.ack(), payload);
+        }
+        int idx = frame.seq() & mask;
+        seqs[idx] = frame.seq();
+        payloads[idx] = payload;
+        last_ack = frame.ack();
+    }
+
+    /**
+     * Handles a parity frame received
+     * @param frame the parity frame
+     * @return the frames recovered, in order, or null if none
+     */
+    java.util.List<Frame> parity_received(Frame frame) {
+        received++;
+        int first = frame.seq();
+        int k = frame.ack();
+        byte[] parity = ParityCodec.from_info(frame.info());
+        if ((parity == null) || (k < 1) || (k > mask + 1)) {
+            return null;
+        }
+        System.arraycopy(parity, 0, acc, 0, acc.length);
+        int missing = -1;
+        int seq = first;
+        for (int i = 0; i < k; i++) {
+            int idx = seq & mask;
+            if (seqs[idx] == seq) {
+                if (!ParityCodec.to_block(payloads[idx], block)) {
+                    return null;
+                }
+                block[0] = ParityCodec.check_of(payloads[idx]);
+                ParityCodec.xor_into(acc, block);
+            } else if (missing < 0) {
+                missing = i;
+            } else {
+                return null;    // More than one frame lost
+            }
+            seq = (seq == max_seq) ? 0 : seq + 1;
+        }
+        if (missing < 0) {
+            forget(first, k);
+            return null;        // Nothing to recover
+        }
+        String payload = ParityCodec.from_block(acc);
+        if ((payload == null) || (ParityCodec.check_of(payload) != acc[0])) {
+            failed++;
+            return null;
+        }
+        recovered++;
+        java.util.List<Frame> list = new java.util.ArrayList<>();
+        seq = add(first, missing);
+        Frame f = Frame.new_Data_Frame(seq, last_ack, payload);
+        list.add(f);
+        data_received(f);
+        for (int i = missing + 1; i < k; i++) {
+            seq = add(first, i);
+            list.add(Frame.new_Data_Frame(seq, last_ack, payloads[seq & mask]));
+        }
+        forget(first, k);
+        return list;
+    }
+
+    /**
+     * Forgets the frames of a group after its parity, so that they are not
+     * mistaken for frames of a later group with the same sequence numbers
+     * @param first sequence number of the first frame
+     * @param k number of frames
+     */
+    private void forget(int first, int k) {
+        for (int i = 0; i < k; i++) {
+            int seq = add(first, i);
+            int idx = seq & mask;
+            if (seqs[idx] == seq) {
+                seqs[idx] = -1;
+                payloads[idx] = null;
+            }
+        }
+    }
+
+    /**
+     * Adds a number to a sequence number
+     * @param seq sequence number
+     * @param n increment
+     * @return the resulting sequence number
+     */
+    private int add(int seq, int n) {
+        return (int) (((long) seq + n) % ((long) max_seq + 1));
+    }
+
+    /**
+     * Writes the decoder counters to a log
+     * @param log the log object
+     */
+    void print(Log log) {
+        log.Log("\tFEC parity frames received: " + received + "  frames recovered: " + recovered
+                + "  check failures: " + failed + "\n");
+    }
+
+
+    /* Variables */
+
+    /**
+     * Maximum sequence number
+     */
+    private final int max_seq;
+
+    /**
+     * Mask used to index the recent frames by sequence number
+     */
+    private final int mask;
+
+    /**
+     * Sequence numbers and payloads of the frames received recently
+     */
+    private final int[] seqs;
+    private final String[] payloads;
+
+    /**
+     * Parity being checked and block of a payload
+     */
+    private final byte[] acc, block;
+
+    /**
+     * Acknowledgement number of the last DATA frame received, used in the
+     * frames recovered
+     */
+    private int last_ack;
+
+    /**
+     * Number of parity frames received, frames recovered and recoveries that
+     * failed the check
+     */
+    private long received, recovered, failed;
+}
@@ -0,0 +1,156 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Frame;
+import simulator.Log;
+
+/**
+ * Sender side of the XOR parity forward error correction: accumulates the 
+ * parity of each group of k DATA frames with consecutive sequence numbers and
+ * builds the parity frame sent after the last one. The parity frame carries
+ * the first sequence number of the group in the seq field and k in the ack
+ * field. A group is restarted when the sequence numbers are not consecutive
+ * (e.g. after a go back), and is sent without parity if a payload is too long
+ * to be covered.
+ */
+class FecEncoder {
+
+    /**
+     * Constructor
+     * @param _k number of DATA frames covered by each parity frame
+     * @param _max_seq maximum sequence number
+     */
+    FecEncoder(int _k, int _max_seq) {
+        this.k = _k;
+        this.max_seq = _max_seq;
+        this.acc = new byte[ParityCodec.BLOCK_BYTES];
+        this.block = new byte[ParityCodec.BLOCK_BYTES];
+        this.count = 0;
+        this.parity_in_flight = false;
+    }
+
+    /**
+     * Prepares a DATA frame for transmission, escaping its payload if needed;
+     * the network layer leaves room for the escape in the payloads
+     * @param frame frame from the protocol
+     * @return the frame sent to the channel, or null if the escaped payload
+     * does not fit in a frame
+     */
+    Frame wire_frame(Frame frame) {
+        String info = ParityCodec.escape(frame.info());
+        if (info == frame.info()) {
+            return frame;
+        }
+        Frame f = new Frame();
+        if (!f.set_DATA_frame(frame.seq(), frame.ack(), info)) {
+            return null;        // Too long to escape
+        }
+        return f;
+    }
+
+    /**
+     * Adds a DATA frame sent to the current group
+     * @param seq sequence number
+     * @param payload payload sent, without escape
+     */
+    void data_sent(int seq, String payload) {
+        if ((count > 0) && (seq != ((last_seq == max_seq) ? 0 : last_seq + 1))) {
+            count = 0;      // Not consecutive: restart the group
+        }
+        if (count == 0) {
+            first_seq = seq;
+            java.util.Arrays.fill(acc, (byte) 0);
+            covered = true;
+        }
+        if (covered && ParityCodec.to_block(payload, block)) {
+            block[0] = ParityCodec.check_of(payload);
+            ParityCodec.xor_into(acc, block);
+        } else {
+            covered = false;
+        }
+        last_seq = seq;
+        count++;
+    }
+
+    /**
+     * Test if the group is complete and a parity frame must be sent; restarts
+     * the group
+     * @return the parity frame, or null if no parity is sent
+     */
+    Frame take_parity() {
+        if (count < k) {
+            return null;
+        }
+        count = 0;
+        if (!covered) {
+            skipped++;
+            return null;
+        }
+        Frame f = new Frame();
+        if (!f.set_DATA_frame(first_seq, k, ParityCodec.to_info(acc))) {
+            skipped++;
+            return null;
+        }
+        sent++;
+        return f;
+    }
+
+    /**
+     * Writes the encoder counters to a log
+     * @param log the log object
+     */
+    void print(Log log) {
+        log.Log("\tFEC parity frames sent: " + sent + "  groups without parity: " + skipped + "\n");
+    }
+
+
+    /* Variables */
+
+    /**
+     * Number of DATA frames covered by each parity frame
+     */
+    private final int k;
+
+    /**
+     * Maximum sequence number
+     */
+    private final int max_seq;
+
+    /**
+     * Parity of the current group and block of the last payload
+     */
+    private final byte[] acc, block;
+
+    /**
+     * Number of frames in the current group
+     */
+    private int count;
+
+    /**
+     * Sequence numbers of the first and the last frames of the group
+     */
+    private int first_seq, last_seq;
+
+    /**
+     * False if a payload of the group did not fit in a block
+     */
+    private boolean covered;
+
+    /**
+     * True while a parity frame is being transmitted
+     */
+    boolean parity_in_flight;
+
+    /**
+     * Sequence number of the DATA_END event delayed by the parity frame
+     */
+    int delayed_end;
+
+    /**
+     * Number of parity frames sent and of groups sent without parity
+     */
+    private long sent, skipped;
+}
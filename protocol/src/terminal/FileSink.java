@@ -0,0 +1,174 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Base64;
+import java.util.zip.Adler32;
+import simulator.Event;
+
+/**
+ * Sink used in the bulk file transfer mode: writes the chunks sent by a 
+ * FileSource into a memory mapped output file, pre-sized with the size in the
+ * header, and verifies the Adler-32 checksum when the trailer is received.
+ * It reports the goodput in bytes per simulation time unit and in MB/s of
+ * real time.
+ */
+public class FileSink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     * @param _filename name of the output file
+     */
+    FileSink(Terminal _root, String _filename) {
+        this.root = _root;
+        this.filename = _filename;
+        this.checksum = new Adler32();
+        this.complete = false;
+    }
+
+    /**
+     * Counts and logs an invalid packet
+     * @param reason description of the error
+     * @return false
+     */
+    private boolean invalid(String reason) {
+        root.Log("\tfile transfer: " + reason + "\n");
+        root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+        return false;
+    }
+
+    @Override
+    public boolean deliver(long time, String packet) {
+        try {
+            switch (packet.charAt(0)) {
+                case FileSource.HEADER:
+                    if (out != null) {
+                        return invalid("repeated header");
+                    }
+                    size = Long.parseLong(packet.substring(1));
+                    if ((size < 0) || (size > Integer.MAX_VALUE)) {
+                        return invalid("invalid file size " + size);
+                    }
+                    file = new RandomAccessFile(filename, "rw");
+                    file.setLength(size);
+                    out = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    start_time = time;
+                    start_nanos = System.nanoTime();
+                    root.Log("\tfile transfer: receiving " + size + " bytes to " + filename + "\n");
+                    return true;
+                case FileSource.DATA:
+                    if (out == null) {
+                        return invalid("data before header");
+                    }
+                    int sep = packet.indexOf(':');
+                    int n = Integer.parseInt(packet.substring(1, sep));
+                    if (n != expected) {
+                        return invalid("chunk " + n + " received out of order");
+                    }
+                    byte[] data = Base64.getDecoder().decode(packet.substring(sep + 1));
+                    long offset = (long) n * FileSource.CHUNK_BYTES;
+                    if (offset + data.length > size) {
+                        return invalid("chunk " + n + " beyond the end of the file");
+                    }
+                    out.position((int) offset);
+                    out.put(data);
+                    checksum.update(data, 0, data.length);
+                    received += data.length;
+                    expected++;
+                    return true;
+                case FileSource.TRAILER:
+                    if ((out == null) || (received != size)) {
+                        return invalid("trailer received with " + received + " bytes of " + size);
+                    }
+                    out.force();
+                    complete = true;
+                    long sum = Long.parseLong(packet.substring(1));
+                    long elapsed = time - start_time;
+                    double secs = (System.nanoTime() - start_nanos) / 1e9;
+                    root.Log("\tfile transfer: " + received + " bytes in " + elapsed
+                            + " time units (" + String.format("%.2f", (elapsed > 0) ? ((double) received) / elapsed : 0.0)
+                            + " bytes/unit, " + String.format("%.3f", (secs > 0) ? received / secs / 1e6 : 0.0)
+                            + " MB/s) checksum " + ((sum == checksum.getValue()) ? "OK" : "FAILED") + "\n");
+                    if (sum != checksum.getValue()) {
+                        root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+                        return false;
+                    }
+                    return true;
+                default:
+                    return invalid("invalid packet");
+            }
+        } catch (IOException | RuntimeException e) {
+            return invalid("error " + e);
+        }
+    }
+
+    @Override
+    public boolean has_room() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if ((out != null) && !complete) {
+            root.Log("\tfile transfer incomplete: " + received + " bytes of " + size + "\n");
+        }
+        out = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                /* Ignore */
+            }
+            file = null;
+        }
+    }
+
+
+    /* Variables */
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Name of the output file
+     */
+    private final String filename;
+    /**
+     * Checksum of the chunks received
+     */
+    private final Adler32 checksum;
+    /**
+     * Output file and its memory mapping; null before the header
+     */
+    private RandomAccessFile file;
+    private MappedByteBuffer out;
+    /**
+     * File size, from the header
+     */
+    private long size;
+    /**
+     * Number of bytes received
+     */
+    private long received;
+    /**
+     * Next chunk expected
+     */
+    private int expected;
+    /**
+     * Simulation and real time when the header was received
+     */
+    private long start_time;
+    private long start_nanos;
+    /**
+     * True after receiving the trailer
+     */
+    private boolean complete;
+}
@@ -0,0 +1,131 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.zip.Adler32;
+import simulator.Event;
+
+/**
+ * Source used in the bulk file transfer mode: memory maps a local file and
+ * sends it in chunks. The transfer starts with a header packet with the file
+ * size ("H&lt;size&gt;"), followed by one packet per chunk with the chunk 
+ * number and the contents in Base64 ("D&lt;n&gt;:&lt;data&gt;"), and ends
+ * with a trailer with the Adler-32 checksum of the file ("T&lt;checksum&gt;").
+ * The chunk size fits the packet in Frame.MAX_INFO_LENGTH characters, with
+ * the tag of bonded links (LinkBond.TAG_LENGTH) and the FEC escape.
+ */
+public class FileSource implements TrafficSource {
+
+    /**
+     * Number of file bytes in each chunk; a multiple of 3 to avoid Base64 padding
+     */
+    static final int CHUNK_BYTES = 54;
+
+    /**
+     * Header packet prefix
+     */
+    static final char HEADER = 'H';
+    /**
+     * Data chunk packet prefix
+     */
+    static final char DATA = 'D';
+    /**
+     * Trailer packet prefix
+     */
+    static final char TRAILER = 'T';
+
+    /**
+     * Constructor
+     * @param filename name of the file to send
+     * @throws IOException if the file cannot be mapped
+     */
+    FileSource(String filename) throws IOException {
+        try (FileChannel ch = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("file too large for the transfer mode");
+            }
+            // The mapping remains valid after closing the channel
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        chunks = (int) ((size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+        chunk = new byte[CHUNK_BYTES];
+        checksum = new Adler32();
+        next = -1;
+    }
+
+    /**
+     * Get the number of packets of the transfer, including header and trailer
+     * @return the number of packets
+     */
+    int packets() {
+        return chunks + 2;
+    }
+
+    @Override
+    public String poll(long time) {
+        if (next < 0) {
+            next = 0;
+            return HEADER + Long.toString(size);
+        }
+        if (next < chunks) {
+            int len = (int) Math.min(CHUNK_BYTES, size - (long) next * CHUNK_BYTES);
+            buf.get(chunk, 0, len);
+            checksum.update(chunk, 0, len);
+            byte[] data = (len == CHUNK_BYTES) ? chunk : java.util.Arrays.copyOf(chunk, len);
+            return DATA + Integer.toString(next++) + ":" + Base64.getEncoder().encodeToString(data);
+        }
+        if (next == chunks) {
+            next++;
+            return TRAILER + Long.toString(checksum.getValue());
+        }
+        return null;
+    }
+
+    @Override
+    public long next_arrival() {
+        return (next > chunks) ? Event.UNDEF_TIME : 0;
+    }
+
+
+    @Override
+    public void close() {
+        next = chunks + 1;
+    }
+
+
+    /* Variables */
+
+    /**
+     * File size
+     */
+    private final long size;
+    /**
+     * Memory mapped file contents
+     */
+    private final MappedByteBuffer buf;
+    /**
+     * Number of chunks
+     */
+    private final int chunks;
+    /**
+     * Buffer with the current chunk
+     */
+    private final byte[] chunk;
+    /**
+     * Checksum of the chunks sent
+     */
+    private final Adler32 checksum;
+    /**
+     * Next chunk to send; -1 before the header and chunks after the data
+     */
+    private int next;
+}
@@ -0,0 +1,39 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+
+/**
+ * Fixed rate source: one packet every interval, starting at time 0
+ */
+public class FixedRateSource extends SyntheticSource {
+
+    /**
+     * Constructor
+     * @param _packets number of packets to generate
+     * @param _size payload size distribution
+     * @param _rnd random number generator
+     * @param _interval simulation time between packets
+     * @throws IllegalArgumentException if the interval is negative
+     */
+    FixedRateSource(int _packets, PayloadSize _size, Random _rnd, long _interval) {
+        super(_packets, _size, _rnd);
+        if (_interval < 0) {
+            throw new IllegalArgumentException("invalid packet interval " + _interval);
+        }
+        this.interval = _interval;
+    }
+
+    @Override
+    long advance(long prev) {
+        return (prev < 0) ? 0 : prev + interval;
+    }
+
+    /**
+     * Interval between packets
+     */
+    private final long interval;
+}
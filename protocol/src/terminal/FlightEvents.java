@@ -0,0 +1,132 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder events emitted by the Terminal. They are disabled
+ * unless a recording is started; the Terminal tests the event types below
+ * before allocating an event, so the cost when not recording is a single
+ * test in each instrumented path. The events that wrap a protocol callback
+ * also measure its duration.
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    /**
+     * Event types, used to test if each kind of event is enabled
+     */
+    static final EventType FRAME_SENT = EventType.getEventType(FrameSent.class);
+    static final EventType FRAME_RECEIVED = EventType.getEventType(FrameReceived.class);
+    static final EventType DATA_END = EventType.getEventType(DataEnd.class);
+    static final EventType TIMEOUT = EventType.getEventType(Timeout.class);
+    static final EventType TIMER_START = EventType.getEventType(TimerStart.class);
+    static final EventType TIMER_CANCEL = EventType.getEventType(TimerCancel.class);
+
+    /**
+     * Frame sent to the channel
+     */
+    @Name("protocol.FrameSent")
+    @Label("Frame Sent")
+    @Category({"Protocol", "Frames"})
+    @Description("Frame sent by the protocol to the channel")
+    static final class FrameSent extends jdk.jfr.Event {
+        @Label("Kind")
+        String kind;
+        @Label("Sequence Number")
+        int seq;
+        @Label("Acknowledgement Number")
+        int ack;
+        @Label("Simulation Time")
+        long simTime;
+        @Label("Retransmission")
+        boolean retransmission;
+    }
+
+    /**
+     * Frame received from the channel; the duration is the protocol callback
+     */
+    @Name("protocol.FrameReceived")
+    @Label("Frame Received")
+    @Category({"Protocol", "Frames"})
+    @Description("Frame received from the channel and handled by from_physical_layer")
+    static final class FrameReceived extends jdk.jfr.Event {
+        @Label("Kind")
+        String kind;
+        @Label("Sequence Number")
+        int seq;
+        @Label("Acknowledgement Number")
+        int ack;
+        @Label("Simulation Time")
+        long simTime;
+        @Label("One-way Delay")
+        long delay;
+    }
+
+    /**
+     * End of a DATA frame transmission; the duration is the protocol callback
+     */
+    @Name("protocol.DataEnd")
+    @Label("Data End")
+    @Category({"Protocol", "Frames"})
+    @Description("End of a DATA frame transmission handled by handle_Data_end")
+    static final class DataEnd extends jdk.jfr.Event {
+        @Label("Sequence Number")
+        int seq;
+        @Label("Simulation Time")
+        long simTime;
+    }
+
+    /**
+     * Timer expiration; the duration is the protocol callback
+     */
+    @Name("protocol.Timeout")
+    @Label("Timeout")
+    @Category({"Protocol", "Timers"})
+    @Description("Expiration of a data or ACK timer handled by the protocol")
+    static final class Timeout extends jdk.jfr.Event {
+        @Label("Timer Key")
+        int key;
+        @Label("Simulation Time")
+        long simTime;
+    }
+
+    /**
+     * Timer started by the protocol
+     */
+    @Name("protocol.TimerStart")
+    @Label("Timer Start")
+    @Category({"Protocol", "Timers"})
+    @Description("Data or ACK timer started by the protocol")
+    static final class TimerStart extends jdk.jfr.Event {
+        @Label("Timer Key")
+        int key;
+        @Label("Interval")
+        long interval;
+        @Label("Simulation Time")
+        long simTime;
+    }
+
+    /**
+     * Timer canceled by the protocol
+     */
+    @Name("protocol.TimerCancel")
+    @Label("Timer Cancel")
+    @Category({"Protocol", "Timers"})
+    @Description("Data or ACK timer canceled by the protocol")
+    static final class TimerCancel extends jdk.jfr.Event {
+        @Label("Timer Key")
+        int key;
+        @Label("Simulation Time")
+        long simTime;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traffic sink that publishes the packets received, in order, to one 
+ * application Flow.Subscriber, respecting the demand it signals. The packets
+ * without demand wait in a bounded buffer; when it is full, has_room returns
+ * false and the data link layer stops accepting new frames, propagating the
+ * backpressure to the sender.
+ */
+public class FlowSink implements TrafficSink, Flow.Publisher<String> {
+
+    /**
+     * Constructor
+     * @param _capacity maximum number of packets buffered without demand
+     */
+    FlowSink(int _capacity) {
+        this.queue = new ArrayBlockingQueue<>(_capacity);
+        this.demand = new AtomicLong(0);
+        this.wip = new AtomicInteger(0);
+        this.done = false;
+        this.cancelled = false;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> s) {
+        synchronized (this) {
+            if (subscriber != null) {
+                s.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                s.onError(new IllegalStateException("FlowSink supports only one subscriber"));
+                return;
+            }
+            subscriber = s;
+        }
+        s.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    cancelled = true;
+                    s.onError(new IllegalArgumentException("non-positive request"));
+                    return;
+                }
+                long d, nd;
+                do {
+                    d = demand.get();
+                    nd = (d + n < 0) ? Long.MAX_VALUE : d + n;
+                } while (!demand.compareAndSet(d, nd));
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                queue.clear();
+            }
+        });
+        drain();
+    }
+
+    /**
+     * Delivers the buffered packets while there is demand; only one thread
+     * runs the loop at a time, the others just signal it to run again
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            Flow.Subscriber<? super String> s = subscriber;
+            if ((s != null) && !cancelled) {
+                while ((demand.get() > 0) && !queue.isEmpty()) {
+                    String packet = queue.poll();
+                    demand.decrementAndGet();
+                    s.onNext(packet);
+                }
+                if (done && queue.isEmpty()) {
+                    cancelled = true;
+                    s.onComplete();
+                }
+            }
+        } while (wip.decrementAndGet() != 0);
+    }
+
+    @Override
+    public boolean has_room() {
+        return cancelled || (queue.remainingCapacity() > 0);
+    }
+
+    @Override
+    public boolean deliver(long time, String packet) {
+        if (cancelled) {
+            return true;    // Nobody is listening: discard it
+        }
+        if (!queue.offer(packet)) {
+            return false;
+        }
+        drain();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        drain();
+    }
+
+
+    /* Variables */
+
+    /**
+     * Packets received and not yet requested by the subscriber
+     */
+    private final ArrayBlockingQueue<String> queue;
+    /**
+     * Number of packets requested and not yet delivered
+     */
+    private final AtomicLong demand;
+    /**
+     * Number of pending drain requests
+     */
+    private final AtomicInteger wip;
+    /**
+     * The subscriber
+     */
+    private volatile Flow.Subscriber<? super String> subscriber;
+    /**
+     * True after the simulation ended
+     */
+    private volatile boolean done;
+    /**
+     * True after the subscription was cancelled or completed
+     */
+    private volatile boolean cancelled;
+}
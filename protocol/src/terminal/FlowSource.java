@@ -0,0 +1,149 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import simulator.Event;
+import simulator.Log;
+
+/**
+ * Traffic source fed by an application Flow.Publisher. It subscribes to the
+ * publisher with a bounded buffer and requests a new payload each time the
+ * protocol takes one, so the application is only asked for data as the 
+ * sending window opens. The payloads must be non empty strings without 
+ * white space, up to Frame.MAX_INFO_LENGTH characters, or up to the size of
+ * the reassembly buffer when the network layer fragments the packets.
+ * The publisher runs on its own threads, so the arrivals are not known in
+ * advance: when the buffer is empty the network layer polls it again after
+ * the interval defined by the option protocol.flow.poll.
+ */
+public class FlowSource implements TrafficSource, Flow.Subscriber<String> {
+
+    /**
+     * Constructor
+     * @param _capacity maximum number of payloads requested and not yet sent
+     * @param _poll interval between polls when the buffer is empty
+     * @param _max_length maximum payload length
+     * @param _log object used to log errors
+     */
+    FlowSource(int _capacity, long _poll, int _max_length, Log _log) {
+        this.capacity = _capacity;
+        this.poll_interval = _poll;
+        this.max_length = _max_length;
+        this.log = _log;
+        this.queue = new ArrayBlockingQueue<>(_capacity);
+        this.done = false;
+        this.last_poll = 0;
+    }
+
+    /**
+     * Tests if a payload can be sent
+     * @param packet the payload
+     * @return true if valid, false otherwise
+     */
+    private boolean valid_payload(String packet) {
+        if ((packet == null) || packet.isEmpty() || (packet.length() > max_length)) {
+            return false;
+        }
+        for (int i = 0; i < packet.length(); i++) {
+            if (Character.isWhitespace(packet.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        if (subscription != null) {
+            s.cancel();
+            return;
+        }
+        subscription = s;
+        s.request(capacity);
+    }
+
+    @Override
+    public void onNext(String item) {
+        if (!valid_payload(item) || !queue.offer(item)) {
+            log.Log("Flow source discarded invalid payload\n");
+            subscription.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        log.Log("Flow source publisher failed: " + t + "\n");
+        done = true;
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+    }
+
+    @Override
+    public String poll(long time) {
+        last_poll = time;
+        String packet = queue.poll();
+        if (packet != null) {
+            subscription.request(1);
+        }
+        return packet;
+    }
+
+    @Override
+    public long next_arrival() {
+        if (!queue.isEmpty()) {
+            return last_poll;
+        }
+        return done ? Event.UNDEF_TIME : last_poll + poll_interval;
+    }
+
+    @Override
+    public void close() {
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        queue.clear();
+    }
+
+
+    /* Variables */
+
+    /**
+     * Maximum number of payloads buffered
+     */
+    private final int capacity;
+    /**
+     * Interval between polls when the buffer is empty
+     */
+    private final long poll_interval;
+    /**
+     * Maximum payload length
+     */
+    private final int max_length;
+    /**
+     * Object used to log errors
+     */
+    private final Log log;
+    /**
+     * Payloads received from the publisher and not yet sent
+     */
+    private final ArrayBlockingQueue<String> queue;
+    /**
+     * Subscription to the publisher
+     */
+    private volatile Flow.Subscription subscription;
+    /**
+     * True after the publisher completed
+     */
+    private volatile boolean done;
+    /**
+     * Simulation time of the last poll
+     */
+    private long last_poll;
+}
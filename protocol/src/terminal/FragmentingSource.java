@@ -0,0 +1,176 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+
+/**
+ * Traffic source that splits the packets of another source that do not fit
+ * in a frame into fragments. Each fragment starts with the header
+ * FRAGMENT_PREFIX + "id.index/count:" followed by a part of the packet; the 
+ * packets that fit are sent unchanged, except those that start with
+ * FRAGMENT_PREFIX or ESCAPED, which get another MARK. The packets are reassembled by a ReassemblingSink.
+ */
+public class FragmentingSource implements TrafficSource {
+
+    /**
+     * Character that starts the fragments and the escaped packets
+     */
+    static final char MARK = '~';
+
+    /**
+     * Prefix of the fragments
+     */
+    static final String FRAGMENT_PREFIX = "~F";
+
+    /**
+     * Start of the escaped packets
+     */
+    static final String ESCAPED = "~~";
+
+    /**
+     * Range of the packet identifiers
+     */
+    static final int ID_MODULUS = 1000;
+
+    /**
+     * Constructor
+     * @param _inner source of the packets
+     * @param _max_length maximum payload length, above the header length
+     *                    given by max_header_length for the longest packet
+     */
+    FragmentingSource(TrafficSource _inner, int _max_length) {
+        this.inner = _inner;
+        this.max_length = _max_length;
+        this.packet = null;
+        this.next_id = 0;
+    }
+
+    /**
+     * Get the length of the fragment header
+     * @param id packet identifier
+     * @param index fragment index
+     * @param count number of fragments
+     * @return the header length
+     */
+    private static int header_length(int id, int index, int count) {
+        return FRAGMENT_PREFIX.length() + Integer.toString(id).length() + 1
+                + Integer.toString(index).length() + 1 + Integer.toString(count).length() + 1;
+    }
+
+    /**
+     * Get the longest fragment header of a packet; a packet is split at most
+     * in one fragment per character
+     * @param length maximum packet length
+     * @return the maximum header length
+     */
+    static int max_header_length(int length) {
+        int count = Math.max(1, length);
+        return header_length(ID_MODULUS - 1, count - 1, count);
+    }
+
+    /**
+     * Calculates the number of fragments of a packet
+     * @param length packet length
+     * @return the number of fragments
+     */
+    private int count_fragments(int length) {
+        // The header grows with the number of digits of the count
+        int count = 1;
+        while (true) {
+            int room = max_length - header_length(ID_MODULUS - 1, count - 1, count);
+            int needed = (length + room - 1) / room;
+            if (needed <= count) {
+                return count;
+            }
+            count = needed;
+        }
+    }
+
+    @Override
+    public String poll(long time) {
+        if (packet == null) {
+            String p = inner.poll(time);
+            if (p == null) {
+                return null;
+            }
+            String escaped = (p.startsWith(FRAGMENT_PREFIX) || p.startsWith(ESCAPED)) ? MARK + p : p;
+            if (escaped.length() <= max_length) {
+                return escaped;
+            }
+            packet = p;
+            pos = 0;
+            index = 0;
+            count = count_fragments(p.length());
+            chunk = max_length - header_length(ID_MODULUS - 1, count - 1, count);
+            id = next_id;
+            next_id = (next_id + 1) % ID_MODULUS;
+            fragmented++;
+        }
+        String header = FRAGMENT_PREFIX + id + "." + index + "/" + count + ":";
+        int end = Math.min(packet.length(), pos + chunk);
+        String fragment = header + packet.substring(pos, end);
+        pos = end;
+        index++;
+        fragments++;
+        if (index == count) {
+            packet = null;
+        }
+        return fragment;
+    }
+
+    @Override
+    public long next_arrival() {
+        return (packet != null) ? 0 : inner.next_arrival();
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+    }
+
+    /**
+     * Returns a string with the fragmentation counters
+     * @return string with the counters
+     */
+    @Override
+    public String toString() {
+        return "Fragmentation: " + fragmented + " packets split in " + fragments + " fragments";
+    }
+
+
+    /* Variables */
+
+    /**
+     * Source of the packets
+     */
+    private final TrafficSource inner;
+
+    /**
+     * Maximum payload length
+     */
+    private final int max_length;
+
+    /**
+     * Packet being fragmented, or null
+     */
+    private String packet;
+
+    /**
+     * Position of the next fragment in the packet, its index, the number of
+     * fragments, the packet identifier and the length of the fragments
+     */
+    private int pos, index, count, id, chunk;
+
+    /**
+     * Identifier of the next packet fragmented
+     */
+    private int next_id;
+
+    /**
+     * Number of packets fragmented and of fragments sent
+     */
+    private long fragmented, fragments;
+}
@@ -0,0 +1,200 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * Histogram of non negative values, such as simulation time intervals, with
+ * logarithmic buckets.
+ * Each power of two is split into SUB_BUCKETS linear sub-buckets, giving a
+ * relative error below 1/SUB_BUCKETS with a fixed array and no allocation
+ * per sample, so it can stay enabled during every simulation.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits used for the linear sub-buckets of each power of two
+     */
+    private static final int SUB_BITS = 4;
+
+    /**
+     * Number of linear sub-buckets per power of two
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets needed to cover all the non negative long values
+     */
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    /**
+     * Constructor
+     * @param _name name used when printing the histogram
+     */
+    public LatencyHistogram(String _name) {
+        this.name = _name;
+        this.counts = new long[BUCKETS];
+        reset();
+    }
+
+    /**
+     * Returns the bucket index of a value
+     * @param v non negative value
+     * @return the bucket index
+     */
+    private static int bucket_of(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) ((v >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Returns the highest value that falls in a bucket
+     * @param idx bucket index
+     * @return the upper bound of the bucket
+     */
+    private static long bucket_high(int idx) {
+        if (idx < SUB_BUCKETS) {
+            return idx;
+        }
+        int shift = (idx >>> SUB_BITS) - 1;
+        long low = ((long) (SUB_BUCKETS + (idx & (SUB_BUCKETS - 1)))) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /**
+     * Records one sample; negative values are ignored
+     * @param v the sample value
+     */
+    public void record(long v) {
+        if (v < 0) {
+            return;
+        }
+        counts[bucket_of(v)]++;
+        count++;
+        sum += v;
+        if (v < min) {
+            min = v;
+        }
+        if (v > max) {
+            max = v;
+        }
+    }
+
+    /**
+     * Clears all the samples recorded
+     */
+    public final void reset() {
+        java.util.Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    /**
+     * Get the number of samples recorded
+     * @return the number of samples
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Get the minimum value recorded
+     * @return the minimum value, or 0 if empty
+     */
+    public long min() {
+        return (count == 0) ? 0 : min;
+    }
+
+    /**
+     * Get the maximum value recorded
+     * @return the maximum value, or 0 if empty
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Get the average of the values recorded
+     * @return the average, or 0 if empty
+     */
+    public double mean() {
+        return (count == 0) ? 0 : ((double) sum) / count;
+    }
+
+    /**
+     * Get the value below which a fraction of the samples falls
+     * @param q fraction between 0 and 1 (e.g. 0.99 for p99)
+     * @return the upper bound of the bucket with the quantile, or 0 if empty
+     */
+    public long percentile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long acc = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            acc += counts[i];
+            if (acc >= rank) {
+                return Math.min(bucket_high(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns a string with a summary of the histogram
+     * @return string with the histogram summary
+     */
+    @Override
+    public String toString() {
+        if (count == 0) {
+            return name + ": no samples";
+        }
+        return name + ": n=" + count + " min=" + min() + " mean="
+                + String.format("%.2f", mean()) + " p50=" + percentile(0.5)
+                + " p99=" + percentile(0.99) + " p999=" + percentile(0.999)
+                + " max=" + max;
+    }
+
+
+    /* Variables */
+
+    /**
+     * Name of the histogram
+     */
+    private final String name;
+
+    /**
+     * Number of samples in each bucket
+     */
+    private final long[] counts;
+
+    /**
+     * Total number of samples
+     */
+    private long count;
+
+    /**
+     * Sum of all samples
+     */
+    private long sum;
+
+    /**
+     * Minimum sample value
+     */
+    private long min;
+
+    /**
+     * Maximum sample value
+     */
+    private long max;
+}
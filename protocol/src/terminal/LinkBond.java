@@ -0,0 +1,281 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import simulator.Event;
+import simulator.Log;
+
+/**
+ * Bonds several links (Terminals, each with its own channel connection and
+ * ARQ protocol) to carry one traffic flow. The packets of one traffic source
+ * are striped across the links: each link takes the next packet when its 
+ * protocol asks for one, so the faster links carry more packets. Each packet
+ * is tagged with a global number in base 36 ("n;packet"), which takes at 
+ * most TAG_LENGTH characters of the frame; on the receiving side the 
+ * packets are resequenced before being delivered in order to one traffic 
+ * sink. Each link may hold at most quota packets waiting for the packets of
+ * the other links; a link whose quota is full refuses frames, which cannot 
+ * block the link carrying the oldest missing packet, because it holds none.
+ * The same bond is attached to all the Terminals with Terminal.attach; the
+ * shared source and sink are created from the options by the first link 
+ * started. Each channel has its own clock, so the bond is meant for bulk
+ * transfers (saturated, file or socket sources). The load balancing 
+ * summary is written when the last link closes.
+ */
+public class LinkBond {
+
+    /**
+     * Radix of the packet tags
+     */
+    private static final int TAG_RADIX = Character.MAX_RADIX;
+
+    /**
+     * Maximum length of the tag added to the packets, with the separator
+     */
+    static final int TAG_LENGTH = Long.toString(Long.MAX_VALUE, TAG_RADIX).length() + 1;
+
+    /**
+     * Constructor
+     * @param _quota maximum number of packets held by each link in the 
+     *               resequencing buffer
+     */
+    public LinkBond(int _quota) {
+        this.quota = Math.max(1, _quota);
+        this.held = new HashMap<>();
+        this.members = new LinkedHashMap<>();
+        this.next_tag = 0;
+        this.next_release = 0;
+        this.open_sources = 0;
+        this.open_sinks = 0;
+    }
+
+    /**
+     * State of one link of the bond
+     */
+    private static final class Member {
+
+        Member(Terminal _root) {
+            this.root = _root;
+        }
+
+        /**
+         * Reference to the link main window
+         */
+        final Terminal root;
+        /**
+         * Packets sent and received by the link, packets held now and the 
+         * maximum held, and frames refused because the quota was full
+         */
+        long sent, received, holding, max_holding, refused;
+    }
+
+    /**
+     * Get the state of a link of the bond, registering it the first time
+     * @param root reference to the link main window
+     * @return the link state
+     */
+    private Member member(Terminal root) {
+        return members.computeIfAbsent(root, Member::new);
+    }
+
+    /**
+     * Creates the source of the packets sent by one link; the shared source
+     * is created from the options with the first link
+     * @param root reference to the link main window
+     * @return the link source
+     */
+    synchronized TrafficSource source(final Terminal root) {
+        if (shared_source == null) {
+            shared_source = NetworkLayer.create_source(root);
+        }
+        open_sources++;
+        final Member m = member(root);
+        return new TrafficSource() {
+            @Override
+            public String poll(long time) {
+                synchronized (LinkBond.this) {
+                    String p = shared_source.poll(time);
+                    if (p == null) {
+                        return null;
+                    }
+                    m.sent++;
+                    return Long.toString(next_tag++, TAG_RADIX) + ";" + p;
+                }
+            }
+
+            @Override
+            public long next_arrival() {
+                synchronized (LinkBond.this) {
+                    return shared_source.next_arrival();
+                }
+            }
+
+            @Override
+            public void close() {
+                synchronized (LinkBond.this) {
+                    if (--open_sources == 0) {
+                        shared_source.close();
+                        shared_source = null;
+                    }
+                    link_closed(root);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the sink of the packets received by one link; the shared sink
+     * is created from the options with the first link
+     * @param root reference to the link main window
+     * @return the link sink
+     */
+    synchronized TrafficSink sink(final Terminal root) {
+        if (shared_sink == null) {
+            shared_sink = NetworkLayer.create_sink(root);
+        }
+        open_sinks++;
+        final Member m = member(root);
+        return new TrafficSink() {
+            @Override
+            public boolean deliver(long time, String packet) {
+                synchronized (LinkBond.this) {
+                    long tag;
+                    int sep = packet.indexOf(';');
+                    try {
+                        tag = Long.parseLong(packet.substring(0, sep), TAG_RADIX);
+                    } catch (RuntimeException e) {
+                        root.Log("\tnetwork received packet without bond tag\n");
+                        root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+                        return false;
+                    }
+                    m.received++;
+                    if (tag < next_release) {
+                        return true;    // Duplicate
+                    }
+                    if (tag > next_release) {
+                        held.put(tag, new Held(packet.substring(sep + 1), m));
+                        m.holding++;
+                        m.max_holding = Math.max(m.max_holding, m.holding);
+                        return true;
+                    }
+                    boolean ok = shared_sink.deliver(time, packet.substring(sep + 1));
+                    next_release++;
+                    // Release the packets that were waiting for this one
+                    Held h;
+                    while ((h = held.remove(next_release)) != null) {
+                        h.member.holding--;
+                        ok &= shared_sink.deliver(time, h.packet);
+                        next_release++;
+                    }
+                    return ok;
+                }
+            }
+
+            @Override
+            public boolean has_room() {
+                synchronized (LinkBond.this) {
+                    if (m.holding >= quota) {
+                        m.refused++;
+                        return false;
+                    }
+                    return shared_sink.has_room();
+                }
+            }
+
+            @Override
+            public void close() {
+                synchronized (LinkBond.this) {
+                    if (--open_sinks == 0) {
+                        shared_sink.close();
+                        shared_sink = null;
+                    }
+                    link_closed(root);
+                }
+            }
+        };
+    }
+
+    /**
+     * Packet held in the resequencing buffer and the link that received it
+     */
+    private static final class Held {
+
+        Held(String _packet, Member _member) {
+            this.packet = _packet;
+            this.member = _member;
+        }
+
+        final String packet;
+        final Member member;
+    }
+
+    /**
+     * Called when the source or the sink of a link is closed; writes the 
+     * counters when the last link is closed
+     * @param log the log object
+     */
+    private void link_closed(Log log) {
+        if ((open_sources == 0) && (open_sinks == 0)) {
+            print(log);
+        }
+    }
+
+    /**
+     * Writes the load balancing and health counters of all the links to a log
+     * @param log the log object
+     */
+    public synchronized void print(Log log) {
+        long total_sent = 0, total_received = 0;
+        for (Member m : members.values()) {
+            total_sent += m.sent;
+            total_received += m.received;
+        }
+        log.Log("\tBond: " + members.size() + " links, " + held.size()
+                + " packets waiting for resequencing\n");
+        for (Member m : members.values()) {
+            if ((m.sent == 0) && (m.received == 0)) {
+                continue;
+            }
+            log.Log("\t  " + m.root.get_name() + ": sent " + m.sent
+                    + String.format(" (%.1f%%)", (total_sent == 0) ? 0.0 : 100.0 * m.sent / total_sent)
+                    + " received " + m.received
+                    + String.format(" (%.1f%%)", (total_received == 0) ? 0.0 : 100.0 * m.received / total_received)
+                    + " held now " + m.holding + " max " + m.max_holding
+                    + " refused " + m.refused + "\n");
+        }
+    }
+
+
+    /* Variables */
+
+    /**
+     * Maximum number of packets held by each link
+     */
+    private final int quota;
+
+    /**
+     * Packets received ahead of order, by tag
+     */
+    private final HashMap<Long, Held> held;
+
+    /**
+     * State of the links
+     */
+    private final LinkedHashMap<Terminal, Member> members;
+
+    /**
+     * Shared source and sink, and the number of links using them
+     */
+    private TrafficSource shared_source;
+    private TrafficSink shared_sink;
+    private int open_sources, open_sinks;
+
+    /**
+     * Tag of the next packet sent and of the next packet delivered
+     */
+    private long next_tag, next_release;
+}
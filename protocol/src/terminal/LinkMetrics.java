@@ -0,0 +1,311 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+import simulator.Frame;
+
+/**
+ * Collects the delay metrics of one link: the one-way delay of the frames
+ * received, using the frame sending and reception times, and the round trip
+ * time measured between the transmission of a DATA frame and the reception of
+ * the first frame acknowledging it, for each frame kind.
+ */
+public class LinkMetrics {
+
+    /**
+     * Number of frame kinds tracked: DATA, ACK and NAK
+     */
+    private static final int KINDS = 3;
+
+    /**
+     * Constructor
+     * @param window maximum number of DATA frames outstanding in the link
+     */
+    public LinkMetrics(int window) {
+        delay = new LatencyHistogram[KINDS];
+        rtt = new LatencyHistogram[KINDS];
+        for (int i = 0; i < KINDS; i++) {
+            String kind = kind_name(i);
+            delay[i] = new LatencyHistogram("Delay " + kind);
+            rtt[i] = new LatencyHistogram("RTT (by " + kind + ")");
+        }
+        hol = new LatencyHistogram("Head-of-line blocking avoided");
+        // The sending times are kept in a ring indexed by (seq & sent_mask),
+        // which only needs to cover the frames outstanding
+        int size = (window <= 1) ? 1 : Integer.highestOneBit(window - 1) << 1;
+        sent_mask = size - 1;
+        sent_seq = new int[size];
+        sent_time = new long[size];
+        java.util.Arrays.fill(sent_seq, -1);
+        java.util.Arrays.fill(sent_time, Event.UNDEF_TIME);
+    }
+
+    /**
+     * Maps a frame kind to the histogram index
+     * @param kind frame kind
+     * @return the index, or -1 if the kind is not tracked
+     */
+    private static int index_of(int kind) {
+        switch (kind) {
+            case Frame.DATA_FRAME:
+                return 0;
+            case Frame.ACK_FRAME:
+                return 1;
+            case Frame.NAK_FRAME:
+                return 2;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the name of the frame kind associated to a histogram index
+     * @param idx histogram index
+     * @return the frame kind name
+     */
+    private static String kind_name(int idx) {
+        switch (idx) {
+            case 0:
+                return "DATA";
+            case 1:
+                return "ACK";
+            default:
+                return "NAK";
+        }
+    }
+
+    /**
+     * Registers the transmission of a DATA frame
+     * @param seq sequence number of the frame
+     * @param time current simulation time
+     * @param retransmission true if the frame was already sent before
+     */
+    public void data_sent(int seq, long time, boolean retransmission) {
+        if (seq < 0) {
+            return;
+        }
+        if (retransmission) {
+            retransmissions++;
+        }
+        // A retransmitted frame gives an ambiguous RTT sample: do not use it
+        int idx = seq & sent_mask;
+        sent_seq[idx] = seq;
+        sent_time[idx] = retransmission ? Event.UNDEF_TIME : time;
+    }
+
+    /**
+     * Registers the reception of a frame, updating the delay histograms
+     * @param frame frame received, with the sending and reception times set
+     */
+    public void frame_received(Frame frame) {
+        int idx = index_of(frame.kind());
+        if (idx < 0) {
+            return;
+        }
+        if ((frame.snd_time() != Event.UNDEF_TIME) && (frame.rcv_time() != Event.UNDEF_TIME)) {
+            delay[idx].record(frame.rcv_time() - frame.snd_time());
+        }
+        // NAK frames do not acknowledge the ack field
+        if (frame.kind() == Frame.NAK_FRAME) {
+            naks_received++;
+            return;
+        }
+        int ack = frame.ack();
+        if (ack < 0) {
+            return;
+        }
+        int i = ack & sent_mask;
+        if ((sent_seq[i] == ack) && (sent_time[i] != Event.UNDEF_TIME)) {
+            rtt[idx].record(frame.rcv_time() - sent_time[i]);
+            sent_time[i] = Event.UNDEF_TIME;
+        }
+    }
+
+    /**
+     * Registers the transmission of a frame that is not DATA
+     * @param frame frame sent
+     */
+    public void control_sent(Frame frame) {
+        if (frame.kind() == Frame.NAK_FRAME) {
+            naks_sent++;
+        } else if (frame.kind() == Frame.ACK_FRAME) {
+            acks_sent++;
+        }
+    }
+
+    /**
+     * Registers the delivery of a packet to the network layer
+     */
+    public void packet_delivered() {
+        packets_delivered++;
+    }
+
+    /**
+     * Registers a packet delivered in the unordered mode before a missing 
+     * packet sent earlier
+     */
+    public void delivered_ahead() {
+        delivered_ahead++;
+    }
+
+    /**
+     * Registers the delay that a packet delivered in the unordered mode would
+     * have waited for the missing packets before it; 0 if it was in order
+     * @param delay time between its delivery and the delivery of the last
+     * packet missing before it
+     */
+    public void hol_avoided(long delay) {
+        hol.record(delay);
+    }
+
+    /**
+     * Get the histogram of the head-of-line blocking delay avoided by the 
+     * unordered delivery
+     * @return the histogram
+     */
+    public LatencyHistogram hol_avoided() {
+        return hol;
+    }
+
+    /**
+     * Get the number of standalone ACK frames sent
+     * @return the number of ACK frames sent
+     */
+    public long acks_sent() {
+        return acks_sent;
+    }
+
+    /**
+     * Get the number of standalone ACK frames sent per packet delivered
+     * @return the ratio, or 0 if no packet was delivered
+     */
+    public double acks_per_packet() {
+        long n = packets_delivered;
+        return (n == 0) ? 0 : ((double) acks_sent) / n;
+    }
+
+    /**
+     * Registers the expiration of the data timer
+     */
+    public void data_timeout() {
+        timeouts++;
+    }
+
+    /**
+     * Get the number of DATA frames retransmitted
+     * @return the number of retransmissions
+     */
+    public long retransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * Get the number of data timer expirations
+     * @return the number of timeouts
+     */
+    public long timeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Get the number of NAK frames sent
+     * @return the number of NAK frames sent
+     */
+    public long naks_sent() {
+        return naks_sent;
+    }
+
+    /**
+     * Get the number of NAK frames received
+     * @return the number of NAK frames received
+     */
+    public long naks_received() {
+        return naks_received;
+    }
+
+    /**
+     * Get the one-way delay histogram of a frame kind
+     * @param kind frame kind
+     * @return the histogram, or null if the kind is not tracked
+     */
+    public LatencyHistogram delay(int kind) {
+        int idx = index_of(kind);
+        return (idx < 0) ? null : delay[idx];
+    }
+
+    /**
+     * Get the RTT histogram of the acknowledgements carried by a frame kind
+     * @param kind frame kind
+     * @return the histogram, or null if the kind is not tracked
+     */
+    public LatencyHistogram rtt(int kind) {
+        int idx = index_of(kind);
+        return (idx < 0) ? null : rtt[idx];
+    }
+
+    /**
+     * Writes a summary of all the non empty histograms to a log
+     * @param log the log object
+     */
+    public void print(simulator.Log log) {
+        log.Log("\tRetransmissions: " + retransmissions + "  Timeouts: " + timeouts
+                + "  NAKs sent: " + naks_sent + "  NAKs received: " + naks_received + "\n");
+        log.Log("\tACKs sent: " + acks_sent + "  Packets delivered: " + packets_delivered
+                + "  ACKs per packet: " + String.format("%.3f", acks_per_packet()) + "\n");
+        for (int i = 0; i < KINDS; i++) {
+            if (delay[i].count() > 0) {
+                log.Log("\t" + delay[i] + "\n");
+            }
+        }
+        for (int i = 0; i < KINDS; i++) {
+            if (rtt[i].count() > 0) {
+                log.Log("\t" + rtt[i] + "\n");
+            }
+        }
+        if (hol.count() > 0) {
+            log.Log("\tUnordered delivery: " + delivered_ahead + " packets delivered ahead of order\n");
+            log.Log("\t" + hol + "\n");
+        }
+    }
+
+
+    /* Variables */
+
+    /**
+     * One-way delay of the frames received, by frame kind
+     */
+    private final LatencyHistogram[] delay;
+
+    /**
+     * Round trip time, by kind of the frame that carried the acknowledgement
+     */
+    private final LatencyHistogram[] rtt;
+
+    /**
+     * Head-of-line blocking delay avoided by the unordered delivery, per packet
+     */
+    private final LatencyHistogram hol;
+
+    /**
+     * Sequence number and sending time of the outstanding DATA frames, 
+     * indexed by (seq &amp; sent_mask)
+     */
+    private final int[] sent_seq;
+    private final long[] sent_time;
+    private final int sent_mask;
+
+    /**
+     * Counters of retransmitted DATA frames, data timeouts and NAK frames;
+     * volatile because they are also read by the monitoring threads
+     */
+    private volatile long retransmissions;
+    private volatile long timeouts;
+    private volatile long naks_sent;
+    private volatile long naks_received;
+    private volatile long acks_sent;
+    private volatile long packets_delivered;
+    private volatile long delivered_ahead;
+}
@@ -0,0 +1,283 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import protocol.Base_Protocol;
+import protocol.Callbacks;
+import simulator.Frame;
+
+/**
+ * JMX MBean of a link. It reads the state from the Terminal, the protocol
+ * object and the link metrics without locking, so the values are a snapshot
+ * that may be slightly out of date while a simulation is running.
+ */
+public class LinkMonitor implements LinkMonitorMBean {
+
+    /**
+     * Counter used to create a unique name for each link in the JVM
+     */
+    private static int link_count = 0;
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     */
+    LinkMonitor(Terminal _root) {
+        this.root = _root;
+        this.name = null;
+    }
+
+    /**
+     * Registers the MBean in the platform MBean server
+     * @return true if successful, false otherwise
+     */
+    boolean register() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            synchronized (LinkMonitor.class) {
+                name = new ObjectName("protocol:type=Link,id=" + link_count);
+                link_count++;
+            }
+            mbs.registerMBean(this, name);
+            return true;
+        } catch (Exception e) {
+            root.Log("Error registering link MBean: " + e + "\n");
+            name = null;
+            return false;
+        }
+    }
+
+    /**
+     * Removes the MBean from the platform MBean server
+     */
+    void unregister() {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            /* Ignore */
+        }
+        name = null;
+    }
+
+    /**
+     * Get the protocol object, if it exposes its state
+     * @return the protocol object, or null
+     */
+    private Base_Protocol protocol() {
+        Callbacks proto = root.get_protocol();
+        return (proto instanceof Base_Protocol) ? (Base_Protocol) proto : null;
+    }
+
+    /**
+     * Get the RTT histogram of the ACK frames
+     * @return the histogram, or null if not running
+     */
+    private LatencyHistogram ack_rtt() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? null : metrics.rtt(Frame.ACK_FRAME);
+    }
+
+    @Override
+    public String getName() {
+        return root.get_name().trim();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return root.is_running();
+    }
+
+    @Override
+    public String getProtocol() {
+        Callbacks proto = root.get_protocol();
+        return (proto == null) ? "none" : proto.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getWindowBase() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? -1 : proto.window_base();
+    }
+
+    @Override
+    public int getNextToSend() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? -1 : proto.next_to_send();
+    }
+
+    @Override
+    public int getInFlight() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.in_flight();
+    }
+
+    @Override
+    public int getWindowRetransmissions() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.window_retransmissions();
+    }
+
+    @Override
+    public long getFastRetransmissions() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.fast_retransmissions();
+    }
+
+    @Override
+    public long getProbesSent() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.probes_sent();
+    }
+
+    @Override
+    public long getZeroWindowProbes() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.window_probes();
+    }
+
+    @Override
+    public long getRto() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.rto_estimator().rto();
+    }
+
+    @Override
+    public long getSrtt() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.rto_estimator().srtt();
+    }
+
+    @Override
+    public int getCurrentWindow() {
+        Base_Protocol proto = protocol();
+        return (proto == null) ? 0 : proto.window_controller().window();
+    }
+
+    @Override
+    public long getRetransmissions() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.retransmissions();
+    }
+
+    @Override
+    public long getTimeouts() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.timeouts();
+    }
+
+    @Override
+    public long getNaksSent() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.naks_sent();
+    }
+
+    @Override
+    public long getNaksReceived() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.naks_received();
+    }
+
+    @Override
+    public long getAcksSent() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.acks_sent();
+    }
+
+    @Override
+    public double getAcksPerPacket() {
+        LinkMetrics metrics = root.get_metrics();
+        return (metrics == null) ? 0 : metrics.acks_per_packet();
+    }
+
+    @Override
+    public long getRttP50() {
+        LatencyHistogram h = ack_rtt();
+        return (h == null) ? 0 : h.percentile(0.5);
+    }
+
+    @Override
+    public long getRttP99() {
+        LatencyHistogram h = ack_rtt();
+        return (h == null) ? 0 : h.percentile(0.99);
+    }
+
+    @Override
+    public long getRttP999() {
+        LatencyHistogram h = ack_rtt();
+        return (h == null) ? 0 : h.percentile(0.999);
+    }
+
+    @Override
+    public int getMaxSequence() {
+        return root.get_max_sequence();
+    }
+
+    @Override
+    public long getTimeout() {
+        return root.get_timeout_time();
+    }
+
+    @Override
+    public void setTimeout(long timeout) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must be >= 0");
+        }
+        root.set_config_timeout(timeout);
+    }
+
+    @Override
+    public int getSendWindow() {
+        return root.get_send_window();
+    }
+
+    @Override
+    public void setSendWindow(int swnd) {
+        set_windows(swnd, root.get_recv_window());
+    }
+
+    @Override
+    public int getRecvWindow() {
+        return root.get_recv_window();
+    }
+
+    @Override
+    public void setRecvWindow(int rwnd) {
+        set_windows(root.get_send_window(), rwnd);
+    }
+
+    /**
+     * Validates and sets new window sizes
+     * @param swnd sending window size
+     * @param rwnd receiving window size
+     */
+    private void set_windows(int swnd, int rwnd) {
+        if (root.is_running()) {
+            throw new IllegalStateException("windows can only be changed between runs");
+        }
+        if ((swnd < 1) || (rwnd < 1) || (((long) swnd + rwnd) > ((long) root.get_max_sequence() + 1))) {
+            throw new IllegalArgumentException("Invalid SND window, RCV window or Max sequence");
+        }
+        root.set_config_windows(swnd, rwnd);
+    }
+
+
+    /* Variables */
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+
+    /**
+     * Name used in the MBean server, or null if not registered
+     */
+    private ObjectName name;
+}
@@ -0,0 +1,190 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * JMX management interface of a link, registered by each Terminal while it is
+ * connected to the channel. It exposes the protocol state and counters, and
+ * allows changing the configuration between runs.
+ */
+public interface LinkMonitorMBean {
+
+    /**
+     * Get the name of the terminal, received from the channel
+     * @return the terminal name
+     */
+    String getName();
+
+    /**
+     * Test if a simulation is running
+     * @return true if running, false otherwise
+     */
+    boolean isRunning();
+
+    /**
+     * Get the name of the protocol class used in the link
+     * @return the protocol name
+     */
+    String getProtocol();
+
+    /**
+     * Get the sequence number of the oldest frame not acknowledged
+     * @return the sending window base, or -1 if not available
+     */
+    int getWindowBase();
+
+    /**
+     * Get the sequence number of the next new frame to send
+     * @return the next sequence number, or -1 if not available
+     */
+    int getNextToSend();
+
+    /**
+     * Get the number of frames sent and not acknowledged
+     * @return the number of frames in flight
+     */
+    int getInFlight();
+
+    /**
+     * Get the number of frames retransmitted in the current sending window
+     * @return the number of retransmissions since the window base last moved
+     */
+    int getWindowRetransmissions();
+
+    /**
+     * Get the number of fast retransmissions triggered by duplicate ACKs
+     * @return the number of fast retransmissions, or 0 if not supported
+     */
+    long getFastRetransmissions();
+
+    /**
+     * Get the number of tail-loss probes sent
+     * @return the number of probes, or 0 if not available
+     */
+    long getProbesSent();
+
+    /**
+     * Get the number of zero window probes sent
+     * @return the number of probes, or 0 if not available
+     */
+    long getZeroWindowProbes();
+
+    /**
+     * Get the current retransmission timeout of the protocol
+     * @return the RTO, or 0 if not available
+     */
+    long getRto();
+
+    /**
+     * Get the smoothed RTT measured by the protocol
+     * @return the SRTT, or 0 if not available
+     */
+    long getSrtt();
+
+    /**
+     * Get the current sending window of the protocol, which may be below the
+     * configured one when the adaptive window is enabled
+     * @return the current sending window, or 0 if not available
+     */
+    int getCurrentWindow();
+
+    /**
+     * Get the number of DATA frames retransmitted
+     * @return the number of retransmissions
+     */
+    long getRetransmissions();
+
+    /**
+     * Get the number of data timer expirations
+     * @return the number of timeouts
+     */
+    long getTimeouts();
+
+    /**
+     * Get the number of NAK frames sent
+     * @return the number of NAK frames sent
+     */
+    long getNaksSent();
+
+    /**
+     * Get the number of NAK frames received
+     * @return the number of NAK frames received
+     */
+    long getNaksReceived();
+
+    /**
+     * Get the number of standalone ACK frames sent
+     * @return the number of ACK frames sent
+     */
+    long getAcksSent();
+
+    /**
+     * Get the number of standalone ACK frames sent per packet delivered,
+     * which measures the reverse channel overhead of the ACK policy
+     * @return the ratio, or 0 if no packet was delivered
+     */
+    double getAcksPerPacket();
+
+    /**
+     * Get the median RTT measured with ACK frames
+     * @return the RTT p50, or 0 if no samples
+     */
+    long getRttP50();
+
+    /**
+     * Get the 99th percentile of the RTT measured with ACK frames
+     * @return the RTT p99, or 0 if no samples
+     */
+    long getRttP99();
+
+    /**
+     * Get the 99.9th percentile of the RTT measured with ACK frames
+     * @return the RTT p999, or 0 if no samples
+     */
+    long getRttP999();
+
+    /**
+     * Get the maximum sequence number
+     * @return the maximum sequence number
+     */
+    int getMaxSequence();
+
+    /**
+     * Get the data timeout value
+     * @return the timeout value
+     */
+    long getTimeout();
+
+    /**
+     * Set the data timeout value; used in the next timers started, and by the
+     * adaptive RTO until it has the first RTT sample
+     * @param timeout the new timeout value, equal to or above 0
+     */
+    void setTimeout(long timeout);
+
+    /**
+     * Get the sending window size
+     * @return the sending window size
+     */
+    int getSendWindow();
+
+    /**
+     * Set the sending window size; only allowed between runs
+     * @param swnd the new sending window size
+     */
+    void setSendWindow(int swnd);
+
+    /**
+     * Get the receiving window size
+     * @return the receiving window size
+     */
+    int getRecvWindow();
+
+    /**
+     * Set the receiving window size; only allowed between runs
+     * @param rwnd the new receiving window size
+     */
+    void setRecvWindow(int rwnd);
+}
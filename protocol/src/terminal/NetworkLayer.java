@@ -4,15 +4,28 @@
  */
 package terminal;
 
+import java.util.Random;
 import simulator.Event;
 
 /**
- * Implements a saturated network layer protocol that keeps sending packets to
- * the data link link, until reaching the number of packets specified
+ * Implements a network layer protocol that sends to the data link layer the 
+ * packets generated by a traffic source, until reaching the number of packets
+ * specified. The source is selected with the option protocol.traffic; by
+ * default it is saturated and keeps sending packets.
+ * With the option protocol.unordered, message oriented sinks accept the
+ * packets out of order, and the protocols that buffer frames received out
+ * of order deliver them immediately (unordered delivery).
  * 
  * @author lflb@fct.unl.pt
  */
 public class NetworkLayer {
+
+    /**
+     * Maximum length of the headers added to a packet by the shims applied
+     * before the fragmentation (bond tag, or class tag and escape of the 
+     * priority shim)
+     */
+    private static final int SHIM_HEADER = 16;
     
     /**
      * Constructer
@@ -20,50 +33,384 @@ public class NetworkLayer {
      */
     NetworkLayer(Terminal _root) {
         this.root= _root;
-        this.cnt= 0;
-        this.expected= 0;
+        LinkBond bond= _root.get_bond();
+        TrafficSource src= (bond != null) ? bond.source(_root) : create_source(_root);
+        TrafficSink snk= (bond != null) ? bond.sink(_root) : create_sink(_root);
+        // Fragmentation of the packets longer than a frame, when enabled
+        int fragment= fragment_size();
+        if ((fragment == 0) && (Options.get_int("fragment.size", 0) > 0)) {
+            _root.Log("Fragmentation not used: protocol.fragment.size must be above "
+                    + min_fragment_size() + "\n");
+        }
+        this.unordered= Options.get_boolean("unordered", false)
+                && unordered_allowed(_root, snk, bond, fragment);
+        if (unordered && (snk instanceof CounterSink)) {
+            ((CounterSink) snk).set_unordered();
+        }
+        // Priority classes, scheduled before the other shims
+        int classes= Options.get_int("priority.classes", 0);
+        if ((classes > 0) && (bond != null)) {
+            _root.Log("Priority classes not used with bonded links\n");
+            classes= 0;
+        }
+        if (classes > 0) {
+            TrafficSource[] srcs= new TrafficSource[classes + 1];
+            int[] weights= new int[classes + 1];
+            srcs[0]= src;
+            weights[0]= Options.get_int("priority.0.weight", 1);
+            for (int c= 1; c <= classes; c++) {
+                String prefix= "priority." + c + ".";
+                srcs[c]= create_synthetic(_root, prefix,
+                        Options.get_int(prefix + "packets", _root.get_packets()), "poisson");
+                weights[c]= Options.get_int(prefix + "weight", 1);
+            }
+            this.prioritizer= new PrioritySource(srcs, weights,
+                    Options.get_string("priority.sched", "strict").equals("wfq"));
+            src= prioritizer;
+            snk= new PrioritySink(_root, snk, classes, unordered);
+        } else {
+            this.prioritizer= null;
+        }
+        if (fragment > 0) {
+            this.fragmenter= new FragmentingSource(src, fragment);
+            src= fragmenter;
+            snk= new ReassemblingSink(_root, snk, fragment_buffer() + SHIM_HEADER);
+        } else {
+            this.fragmenter= null;
+        }
+        // Aggregation of small packets into one frame
+        int aggregate= Math.min(Options.get_int("aggregate.size", 0), frame_room());
+        if (aggregate > 0) {
+            this.aggregator= new AggregatingSource(src, aggregate, Options.get_long("aggregate.hold", 0));
+            src= aggregator;
+            snk= new DeaggregatingSink(_root, snk);
+        } else {
+            this.aggregator= null;
+        }
+        // Compression of the payloads
+        if (Options.get_boolean("compress", false)) {
+            byte[] dict= CompressingSource.dictionary(_root);
+            this.compressor= new CompressingSource(src, dict, frame_room(),
+                    Options.get_double("compress.min_gain", 0.1),
+                    Options.get_double("compress.max_cost", 5000));
+            src= compressor;
+            snk= new DecompressingSink(_root, snk, dict);
+        } else {
+            this.compressor= null;
+        }
+        this.source= src;
+        this.sink= snk;
+        int size= Options.get_int("rxbuffer.size", 0);
+        ReceiverBuffer rxbuf= null;
+        if (size > 0) {
+            try {
+                rxbuf= new ReceiverBuffer(size, Options.get_double("rxbuffer.rate", 1.0));
+            } catch (IllegalArgumentException e) {
+                _root.Log("Receiver buffer not used: " + e.getMessage() + "\n");
+            }
+        }
+        this.buffer= rxbuf;
+        this.refuse= (rxbuf != null)
+                && Options.get_string("rxbuffer.policy", "refuse").equals("refuse");
+    }
+
+    /**
+     * Get the room for a payload in a frame: Frame.MAX_INFO_LENGTH, minus the
+     * escape character the FEC may add to the payloads (option protocol.fec.k)
+     * @return the maximum payload length given to the protocol
+     */
+    static int frame_room() {
+        return simulator.Frame.MAX_INFO_LENGTH - ((Options.get_int("fec.k", 0) > 0) ? 1 : 0);
+    }
+
+    /**
+     * Get the maximum fragment size (option protocol.fragment.size), limited
+     * to the room in a frame; fragmentation is disabled by default, or when 
+     * the size does not leave room for the data after the fragment header
+     * @return the maximum fragment size, or 0 if fragmentation is disabled
+     */
+    static int fragment_size() {
+        int size= Math.min(Options.get_int("fragment.size", 0), frame_room());
+        return (size > min_fragment_size()) ? size : 0;
+    }
+
+    /**
+     * Get the size that the fragments must exceed: the longest fragment 
+     * header of a packet filling the reassembly buffer
+     * @return the minimum fragment size minus one
+     */
+    private static int min_fragment_size() {
+        return FragmentingSource.max_header_length(fragment_buffer() + SHIM_HEADER);
+    }
+
+    /**
+     * Get the size of the reassembly buffer (option protocol.fragment.buffer)
+     * @return the maximum length of a packet reassembled, without the headers
+     * of the shims applied before the fragmentation
+     */
+    private static int fragment_buffer() {
+        return Options.get_int("fragment.buffer", 65536);
+    }
+
+    /**
+     * Get the maximum length of the packets generated by the sources: the 
+     * size of the reassembly buffer (option protocol.fragment.buffer) when
+     * the packets are fragmented, or the room in a frame otherwise, minus the
+     * tag added to the packets of bonded links or the header added to the
+     * packets of the priority classes
+     * @param root reference to the main window
+     * @return the maximum packet length
+     */
+    static int max_packet_length(Terminal root) {
+        int max= (fragment_size() > 0) ? fragment_buffer() : frame_room();
+        if (root.get_bond() != null) {
+            return max - LinkBond.TAG_LENGTH;
+        }
+        int classes= Options.get_int("priority.classes", 0);
+        return (classes > 0) ? max - PrioritySource.header_length(classes) : max;
+    }
+
+    /**
+     * Tests if the packets can be delivered out of order: the sink must be 
+     * message oriented (numbered packets or an application subscriber) and 
+     * the packets cannot be fragmented or striped over bonded links, because
+     * their reassembly needs the packets in order
+     * @param root reference to the main window
+     * @param snk sink of the packets received
+     * @param bond link bond, or null
+     * @param fragment maximum fragment size, or 0 if fragmentation is disabled
+     * @return true if unordered delivery can be used
+     */
+    private static boolean unordered_allowed(Terminal root, TrafficSink snk, LinkBond bond,
+            int fragment) {
+        String reason= null;
+        if (!(snk instanceof CounterSink) && !(snk instanceof FlowSink)) {
+            reason= "the sink needs the packets in order";
+        } else if (bond != null) {
+            reason= "bonded links are resequenced";
+        } else if (fragment > 0) {
+            reason= "fragmentation is enabled (protocol.fragment.size)";
+        }
+        if (reason != null) {
+            root.Log("Unordered delivery not used: " + reason + "\n");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates the traffic source configured in the options:
+     *   protocol.traffic          saturated, poisson, onoff, fixed, trace or file
+     *   protocol.traffic.rate     packets per time unit (poisson and onoff)
+     *   protocol.traffic.on       average ON period duration (onoff)
+     *   protocol.traffic.off      average OFF period duration (onoff)
+     *   protocol.traffic.interval interval between packets (fixed)
+     *   protocol.traffic.file     trace file name (trace)
+     *   protocol.traffic.size     payload size distribution (see PayloadSize)
+     *   protocol.traffic.seed     random seed
+     *   protocol.file.send        file sent in the file transfer mode (file)
+     * The sources of the priority classes use the same options, prefixed 
+     * with protocol.priority.&lt;c&gt;. (see PrioritySource).
+     * @param root reference to the main window
+     * @return the traffic source; a saturated source if the options are invalid
+     */
+    static TrafficSource create_source(Terminal root) {
+        if (root.get_socket() != null) {
+            return root.get_socket().source();
+        }
+        if (root.get_flow_publisher() != null) {
+            FlowSource fs= new FlowSource(Options.get_int("flow.buffer", 16),
+                    Options.get_long("flow.poll", 1), max_packet_length(root), root);
+            root.get_flow_publisher().subscribe(fs);
+            return fs;
+        }
+        return create_synthetic(root, "", root.get_packets(), "saturated");
+    }
+
+    /**
+     * Creates a traffic source configured by the options with a prefix; the
+     * file transfer mode is only available without prefix
+     * @param root reference to the main window
+     * @param prefix prefix of the option names, e.g. "priority.1."
+     * @param packets number of packets to generate
+     * @param def traffic source used if the option prefix.traffic is not set
+     * @return the traffic source; a saturated source if the options are invalid
+     */
+    private static TrafficSource create_synthetic(Terminal root, String prefix, int packets,
+            String def) {
+        Random rnd= new Random(Options.get_long(prefix + "traffic.seed", 1));
+        String kind= Options.get_string(prefix + "traffic", def);
+        try {
+            PayloadSize size= PayloadSize.parse(Options.get_string(prefix + "traffic.size", null),
+                    max_packet_length(root));
+            switch (kind) {
+                case "saturated":
+                    return new SaturatedSource(packets, size, rnd);
+                case "poisson":
+                    return new PoissonSource(packets, size, rnd,
+                            Options.get_double(prefix + "traffic.rate", 0.1));
+                case "onoff":
+                    return new OnOffSource(packets, size, rnd,
+                            Options.get_double(prefix + "traffic.rate", 0.5),
+                            Options.get_double(prefix + "traffic.on", 100),
+                            Options.get_double(prefix + "traffic.off", 100));
+                case "fixed":
+                    return new FixedRateSource(packets, size, rnd,
+                            Options.get_long(prefix + "traffic.interval", 10));
+                case "trace":
+                    return new TraceSource(packets, size, rnd,
+                            Options.get_string(prefix + "traffic.file", "traffic.txt"), root);
+                case "file":
+                    if (prefix.isEmpty()) {
+                        FileSource fs= new FileSource(Options.get_string("file.send", "send.bin"));
+                        root.Log("File transfer mode: sending " + fs.packets() + " packets\n");
+                        return fs;
+                    }
+                    root.Log("File transfer mode not available for '" + prefix
+                            + "traffic'. Using saturated\n");
+                    break;
+                default:
+                    root.Log("Unknown traffic source '" + kind + "'. Using saturated\n");
+            }
+        } catch (Exception e) {
+            root.Log("Invalid traffic source configuration: " + e + ". Using saturated\n");
+        }
+        return new SaturatedSource(packets, PayloadSize.parse(null, 0), rnd);
+    }
+
+    /**
+     * Creates the sink of the packets received: the socket sink if a 
+     * ReliableLinkSocket is attached, a FlowSink if an application
+     * subscriber is attached, a FileSink if the option protocol.file.recv 
+     * defines the output file, or a CounterSink otherwise
+     * @param root reference to the main window
+     * @return the traffic sink
+     */
+    static TrafficSink create_sink(Terminal root) {
+        if (root.get_socket() != null) {
+            return root.get_socket().sink(root);
+        }
+        if (root.get_flow_subscriber() != null) {
+            FlowSink fs= new FlowSink(Options.get_int("flow.buffer", 16));
+            fs.subscribe(root.get_flow_subscriber());
+            return fs;
+        }
+        String out= Options.get_string("file.recv", null);
+        if (out != null) {
+            return new FileSink(root, out);
+        }
+        return new CounterSink(root);
     }
         
     /**
-     * Called by the data link layer to get the next string to send
-     * @return string with the next message
+     * Called by the data link layer to get the next string to send; when no
+     * packet is available, the protocol is notified with handle_network_ready
+     * when the next packet arrives
+     * @return string with the next message, or null if none is available
      */
     public String from_network_layer() {
-        if (cnt < root.get_packets()) {
-            String msg= Integer.toString(cnt);
-            ++cnt;
+        String msg= source.poll(root.get_time());
+        if (msg != null) {
             root.count_statistics(Event.STAT_PAYLOADS_TX);
             root.Log("Network " + root.get_name() + " sent packet: \"" + msg + "\"\n");
             return msg;
         } else {
+            long next= source.next_arrival();
+            if (next != Event.UNDEF_TIME) {
+                root.start_network_timer(next);
+            }
             return null;
         }
     }
     
     
     /**
-     * Called by the data link layer to deliver the received data in order
+     * Called by the data link layer before delivering a packet, to know if 
+     * the receiving buffer can take it. When the buffer is full and the 
+     * policy is "refuse", the protocol should discard the DATA frame without
+     * acknowledging it, so that it is retransmitted later.
+     * The buffer is configured with the options protocol.rxbuffer.size (0 
+     * means unlimited), protocol.rxbuffer.rate (packets consumed per time 
+     * unit, 0 for a stalled consumer) and protocol.rxbuffer.policy (refuse
+     * or drop).
+     * @return true if the packet can be delivered, false otherwise
+     */
+    public boolean can_deliver() {
+        if (sink.has_room() && (!refuse || buffer.has_room(root.get_time()))) {
+            return true;
+        }
+        if (buffer != null) {
+            buffer.refused();
+        }
+        root.Log("Network " + root.get_name() + " refused packet: buffer full\n");
+        root.count_statistics(Event.STAT_PAYLOADS_RX_BUFFERFULL);
+        return false;
+    }
+
+    /**
+     * Called by the data link layer to know if the packets may be delivered
+     * as soon as they are received, without waiting for the missing ones
+     * @return true in the unordered delivery mode
+     */
+    public boolean unordered() {
+        return unordered;
+    }
+
+    /**
+     * Called by the data link layer to get the number of packets that the
+     * network layer can take now, advertised to the sender as a credit
+     * @return the number of free positions in the receiving buffer, 0 if the
+     * sink cannot take packets, or Integer.MAX_VALUE if unlimited
+     */
+    public int credit() {
+        if (!sink.has_room()) {
+            return 0;
+        }
+        return (buffer == null) ? Integer.MAX_VALUE : buffer.free(root.get_time());
+    }
+
+    /**
+     * Called by the data link layer to deliver the received data in order;
+     * the packet is dropped if the receiving buffer is full
      * @param packet the packet received
      * @return true if it was received successfuly, false otherwise
      */
     public boolean to_network_layer(String packet) {
+        if ((buffer != null) && !buffer.accept(root.get_time())) {
+            root.Log("Network " + root.get_name() + " dropped packet: \"" + packet + "\" - buffer full\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_BUFFERFULL);
+            return false;
+        }
         root.Log("Network " + root.get_name() + " received packet: \"" + packet + "\"\n");
         root.count_statistics(Event.STAT_PAYLOADS_RX);
-        // Validate packet
-        try {
-            int n= Integer.parseInt(packet);
-            if (n != expected) {
-                root.Log("\tnetwork received messages out of order\n");
-                root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
-            } else {
-                expected++;
-            }
-        } catch(NumberFormatException e) {
-            root.Log("\tnetwork received invalid message\n");
-            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
-            return false;
+        LinkMetrics metrics = root.get_metrics();
+        if (metrics != null) {
+            metrics.packet_delivered();
         }
-        return true;
+        return sink.deliver(root.get_time(), packet);
+    }
+
+    /**
+     * Called when the simulation ends, to close the traffic sink
+     */
+    void close() {
+        if (buffer != null) {
+            buffer.print(root, root.get_time());
+        }
+        if (fragmenter != null) {
+            root.Log("\t" + fragmenter + "\n");
+        }
+        if (aggregator != null) {
+            root.Log("\t" + aggregator + "\n");
+        }
+        if (compressor != null) {
+            root.Log("\t" + compressor + "\n");
+        }
+        if (prioritizer != null) {
+            prioritizer.print(root);
+        }
+        source.close();
+        sink.close();
     }
     
     
@@ -72,11 +419,48 @@ public class NetworkLayer {
      */
     private final Terminal root;
     /**
-     * Count with the packets sent; the messages are just the number of the packet
+     * Source of the packets sent
+     */
+    private final TrafficSource source;
+    /**
+     * Consumer of the packets received
+     */
+    private final TrafficSink sink;
+    /**
+     * Finite receiving buffer, or null if unlimited
+     */
+    private final ReceiverBuffer buffer;
+    /**
+     * True if the data link layer refuses packets when the buffer is full,
+     * false if they are dropped by the network layer
+     */
+    private final boolean refuse;
+    /**
+     * Packet aggregation shim, or null if disabled (options 
+     * protocol.aggregate.size and protocol.aggregate.hold)
+     */
+    private final AggregatingSource aggregator;
+    /**
+     * Fragmentation shim, or null if disabled (options protocol.fragment.size,
+     * 0 by default to disable, and protocol.fragment.buffer)
+     */
+    private final FragmentingSource fragmenter;
+    /**
+     * Compression shim, or null if disabled (options protocol.compress, 
+     * protocol.compress.dict, protocol.compress.min_gain and 
+     * protocol.compress.max_cost)
+     */
+    private final CompressingSource compressor;
+    /**
+     * Priority scheduler, or null if disabled (options 
+     * protocol.priority.classes, protocol.priority.sched (strict or wfq),
+     * protocol.priority.&lt;c&gt;.weight, protocol.priority.&lt;c&gt;.packets
+     * and the traffic options of each class)
      */
-    private int cnt;
+    private final PrioritySource prioritizer;
     /**
-     * Expected next packet
+     * True if the packets are delivered out of order (option 
+     * protocol.unordered)
      */
-    private int expected;
+    private final boolean unordered;
 }
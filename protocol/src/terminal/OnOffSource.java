@@ -0,0 +1,68 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+
+/**
+ * On/off bursty source: alternates between ON periods, where packets arrive
+ * as a Poisson process, and silent OFF periods. The duration of both periods
+ * is exponentially distributed.
+ */
+public class OnOffSource extends SyntheticSource {
+
+    /**
+     * Constructor
+     * @param _packets number of packets to generate
+     * @param _size payload size distribution
+     * @param _rnd random number generator
+     * @param _rate average number of packets per time unit in ON periods
+     * @param _on average duration of the ON periods
+     * @param _off average duration of the OFF periods
+     * @throws IllegalArgumentException if the rate or the ON duration are not
+     * positive, or the OFF duration is negative
+     */
+    OnOffSource(int _packets, PayloadSize _size, Random _rnd, double _rate,
+            double _on, double _off) {
+        super(_packets, _size, _rnd);
+        if (!(_rate > 0) || !(_on > 0) || !(_off >= 0)) {
+            throw new IllegalArgumentException("invalid on/off parameters: rate " + _rate
+                    + " on " + _on + " off " + _off);
+        }
+        this.mean = 1.0 / _rate;
+        this.on = _on;
+        this.off = _off;
+        this.on_end = -1;
+    }
+
+    @Override
+    long advance(long prev) {
+        long t = Math.max(prev, 0);
+        if (on_end < 0) {
+            on_end = exponential(on);
+        }
+        t += exponential(mean);
+        while (t > on_end) {
+            // The ON period ended: skip the OFF period and start a new burst
+            long on_start = on_end + exponential(off);
+            t = on_start + (t - on_end);
+            on_end = on_start + exponential(on);
+        }
+        return t;
+    }
+
+    /**
+     * Average interval between packets in ON periods
+     */
+    private final double mean;
+    /**
+     * Average duration of the ON and OFF periods
+     */
+    private final double on, off;
+    /**
+     * End time of the current ON period
+     */
+    private long on_end;
+}
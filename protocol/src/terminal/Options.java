@@ -0,0 +1,166 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Log;
+
+/**
+ * Reads the optional configuration parameters that are not available in the
+ * GUI from the Java system properties (e.g. -Dprotocol.traffic=poisson).
+ * All the keys are prefixed with "protocol.". The invalid values are reported
+ * to the log set with set_log; the ones read before are kept until it is set.
+ */
+public final class Options {
+
+    /**
+     * Prefix of all the system properties
+     */
+    private static final String PREFIX = "protocol.";
+
+    private Options() {
+    }
+
+    /**
+     * Sets the log where the invalid values are reported, and writes to it
+     * the ones reported before
+     * @param _log the log object
+     */
+    public static synchronized void set_log(Log _log) {
+        log = _log;
+        if ((log != null) && (pending.length() > 0)) {
+            log.Log(pending.toString());
+            pending.setLength(0);
+        }
+    }
+
+    /**
+     * Reports an invalid parameter value
+     * @param key parameter name, without prefix
+     * @param v value read
+     * @param def default value used instead
+     */
+    private static synchronized void invalid(String key, String v, Object def) {
+        String msg = "Invalid " + PREFIX + key + " value: " + v + ". Using " + def + "\n";
+        if (log != null) {
+            log.Log(msg);
+        } else {
+            pending.append(msg);
+        }
+    }
+
+    /**
+     * Get a string parameter
+     * @param key parameter name, without prefix
+     * @param def default value
+     * @return the parameter value, or def if not defined
+     */
+    public static String get_string(String key, String def) {
+        String v = System.getProperty(PREFIX + key);
+        return ((v == null) || v.trim().isEmpty()) ? def : v.trim();
+    }
+
+    /**
+     * Get an integer parameter
+     * @param key parameter name, without prefix
+     * @param def default value
+     * @return the parameter value, or def if not defined or invalid
+     */
+    public static int get_int(String key, int def) {
+        String v = get_string(key, null);
+        if (v == null) {
+            return def;
+        }
+        try {
+            return Integer.parseInt(v);
+        } catch (NumberFormatException e) {
+            invalid(key, v, def);
+            return def;
+        }
+    }
+
+    /**
+     * Get a long parameter
+     * @param key parameter name, without prefix
+     * @param def default value
+     * @return the parameter value, or def if not defined or invalid
+     */
+    public static long get_long(String key, long def) {
+        String v = get_string(key, null);
+        if (v == null) {
+            return def;
+        }
+        try {
+            return Long.parseLong(v);
+        } catch (NumberFormatException e) {
+            invalid(key, v, def);
+            return def;
+        }
+    }
+
+    /**
+     * Get a floating point parameter
+     * @param key parameter name, without prefix
+     * @param def default value
+     * @return the parameter value, or def if not defined or invalid
+     */
+    public static double get_double(String key, double def) {
+        String v = get_string(key, null);
+        if (v == null) {
+            return def;
+        }
+        try {
+            return Double.parseDouble(v);
+        } catch (NumberFormatException e) {
+            invalid(key, v, def);
+            return def;
+        }
+    }
+
+    /**
+     * Get an enumerated parameter; the value is the name of the constant, in
+     * any case
+     * @param <E> enumerated type
+     * @param key parameter name, without prefix
+     * @param type class of the enumerated type
+     * @param def default value
+     * @return the parameter value, or def if not defined or invalid
+     */
+    public static <E extends Enum<E>> E get_enum(String key, Class<E> type, E def) {
+        String v = get_string(key, null);
+        if (v == null) {
+            return def;
+        }
+        try {
+            return Enum.valueOf(type, v.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            invalid(key, v, def);
+            return def;
+        }
+    }
+
+    /**
+     * Get a boolean parameter
+     * @param key parameter name, without prefix
+     * @param def default value
+     * @return the parameter value, or def if not defined
+     */
+    public static boolean get_boolean(String key, boolean def) {
+        String v = get_string(key, null);
+        return (v == null) ? def : Boolean.parseBoolean(v);
+    }
+
+
+    /* Variables */
+
+    /**
+     * Log where the invalid values are reported, or null if not set yet
+     */
+    private static Log log = null;
+
+    /**
+     * Invalid values reported before the log was set
+     */
+    private static final StringBuilder pending = new StringBuilder();
+}
@@ -0,0 +1,170 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import simulator.Frame;
+
+/**
+ * Support functions of the XOR parity forward error correction, shared by the
+ * encoder and the decoder.
+ * Each payload is coded in a block of BLOCK_BYTES with its length followed by
+ * its UTF-8 bytes and zero padding; the parity of a group of frames is the XOR
+ * of their blocks, computed eight bytes at a time, plus a check byte used to 
+ * validate the frames recovered. Parity frames are DATA frames whose info 
+ * starts with PARITY_PREFIX; the payloads that start with PARITY_PREFIX or 
+ * with two MARK characters are escaped with another MARK.
+ */
+final class ParityCodec {
+
+    /**
+     * Character that starts the parity frames and the escaped payloads
+     */
+    static final char MARK = '~';
+
+    /**
+     * Prefix of the info of the parity frames
+     */
+    static final String PARITY_PREFIX = "~P";
+
+    /**
+     * Number of bytes of the parity sent: the check byte and the XOR area,
+     * limited to fit in a frame after the prefix, encoded in base64
+     */
+    static final int PARITY_BYTES = ((Frame.MAX_INFO_LENGTH - PARITY_PREFIX.length()) * 3) / 4;
+
+    /**
+     * Maximum length in bytes of a payload covered by the parity
+     */
+    static final int MAX_PAYLOAD_BYTES = PARITY_BYTES - 2;
+
+    /**
+     * Size of the blocks, rounded to a multiple of eight bytes
+     */
+    static final int BLOCK_BYTES = ((PARITY_BYTES + 7) / 8) * 8;
+
+    /**
+     * View of the byte arrays as arrays of long, used to XOR eight bytes at
+     * a time
+     */
+    private static final VarHandle LONGS
+            = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ParityCodec() {
+    }
+
+    /**
+     * Codes a payload in a block
+     * @param payload the payload
+     * @param block the block, with BLOCK_BYTES, filled with the payload length
+     * and bytes followed by zeros
+     * @return true if the payload fits in a block, false otherwise
+     */
+    static boolean to_block(String payload, byte[] block) {
+        byte[] b = payload.getBytes(StandardCharsets.UTF_8);
+        if (b.length > MAX_PAYLOAD_BYTES) {
+            return false;
+        }
+        java.util.Arrays.fill(block, (byte) 0);
+        block[1] = (byte) b.length;
+        System.arraycopy(b, 0, block, 2, b.length);
+        return true;
+    }
+
+    /**
+     * Decodes the payload stored in a block
+     * @param block the block
+     * @return the payload, or null if the length is invalid
+     */
+    static String from_block(byte[] block) {
+        int len = block[1] & 0xFF;
+        if ((len == 0) || (len > MAX_PAYLOAD_BYTES)) {
+            return null;
+        }
+        return new String(block, 2, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Calculates the check byte of a payload
+     * @param payload the payload
+     * @return the check byte
+     */
+    static byte check_of(String payload) {
+        int h = payload.hashCode();
+        return (byte) (h ^ (h >>> 8) ^ (h >>> 16) ^ (h >>> 24));
+    }
+
+    /**
+     * Adds a block to the parity: acc ^= block. The check byte is kept in 
+     * byte 0 of the blocks.
+     * @param acc parity accumulated
+     * @param block block added
+     */
+    static void xor_into(byte[] acc, byte[] block) {
+        for (int i = 0; i < BLOCK_BYTES; i += 8) {
+            LONGS.set(acc, i, (long) LONGS.get(acc, i) ^ (long) LONGS.get(block, i));
+        }
+    }
+
+    /**
+     * Encodes a parity block into the info of a parity frame
+     * @param acc parity accumulated
+     * @return the frame info
+     */
+    static String to_info(byte[] acc) {
+        return PARITY_PREFIX + Base64.getEncoder().withoutPadding()
+                .encodeToString(java.util.Arrays.copyOf(acc, PARITY_BYTES));
+    }
+
+    /**
+     * Decodes the info of a parity frame into a block
+     * @param info the frame info
+     * @return the parity block, or null if invalid
+     */
+    static byte[] from_info(String info) {
+        try {
+            byte[] b = Base64.getDecoder().decode(info.substring(PARITY_PREFIX.length()));
+            if (b.length > BLOCK_BYTES) {
+                return null;
+            }
+            return java.util.Arrays.copyOf(b, BLOCK_BYTES);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Test if the info of a DATA frame belongs to a parity frame
+     * @param info the frame info
+     * @return true if it is a parity frame
+     */
+    static boolean is_parity(String info) {
+        return info.startsWith(PARITY_PREFIX);
+    }
+
+    /**
+     * Escapes a payload that could be confused with a parity frame
+     * @param payload the payload
+     * @return the info sent
+     */
+    static String escape(String payload) {
+        return (payload.startsWith(PARITY_PREFIX) || ((payload.length() > 1)
+                && (payload.charAt(0) == MARK) && (payload.charAt(1) == MARK))) ? MARK + payload : payload;
+    }
+
+    /**
+     * Removes the escape of a payload received
+     * @param info the info received
+     * @return the payload
+     */
+    static String unescape(String info) {
+        return ((info.length() > 1) && (info.charAt(0) == MARK) && (info.charAt(1) == MARK))
+                ? info.substring(1) : info;
+    }
+}
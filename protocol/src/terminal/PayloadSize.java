@@ -0,0 +1,106 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+
+/**
+ * Distribution of the payload sizes of the synthetic traffic sources. It is
+ * defined by a string with one of the formats:
+ *    "fixed:N", "uniform:MIN:MAX" or "exp:MEAN".
+ * The sizes are limited to a maximum length: Frame.MAX_INFO_LENGTH, or the
+ * size of the reassembly buffer when the network layer fragments the packets.
+ */
+public class PayloadSize {
+
+    private static final int NONE = 0;
+    private static final int FIXED = 1;
+    private static final int UNIFORM = 2;
+    private static final int EXPONENTIAL = 3;
+
+    /**
+     * Constructor
+     * @param _kind kind of distribution
+     * @param _a first parameter
+     * @param _b second parameter
+     * @param _max maximum payload size
+     * @throws IllegalArgumentException if the parameters are invalid
+     */
+    private PayloadSize(int _kind, double _a, double _b, int _max) {
+        if ((_a < 0) || ((_kind == UNIFORM) && (_b < _a))
+                || ((_kind == EXPONENTIAL) && !(_a > 0))) {
+            throw new IllegalArgumentException("invalid payload size parameters " + _a
+                    + ((_kind == UNIFORM) ? ":" + _b : ""));
+        }
+        this.kind = _kind;
+        this.a = _a;
+        this.b = _b;
+        this.max = _max;
+    }
+
+    /**
+     * Creates a distribution from its description
+     * @param spec description string, or null for minimum size payloads
+     * @param max maximum payload size
+     * @return the distribution object
+     * @throws IllegalArgumentException if the description is invalid
+     */
+    public static PayloadSize parse(String spec, int max) {
+        if ((spec == null) || spec.equals("none")) {
+            return new PayloadSize(NONE, 0, 0, max);
+        }
+        String[] p = spec.split(":");
+        try {
+            switch (p[0]) {
+                case "fixed":
+                    return new PayloadSize(FIXED, Integer.parseInt(p[1]), 0, max);
+                case "uniform":
+                    return new PayloadSize(UNIFORM, Integer.parseInt(p[1]), Integer.parseInt(p[2]), max);
+                case "exp":
+                    return new PayloadSize(EXPONENTIAL, Double.parseDouble(p[1]), 0, max);
+                default:
+                    throw new IllegalArgumentException("unknown payload size distribution '" + p[0] + "'");
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new IllegalArgumentException("invalid payload size '" + spec + "'");
+        }
+    }
+
+    /**
+     * Draws the size of the next payload
+     * @param rnd random number generator
+     * @return the payload size, 0 meaning the minimum size
+     */
+    public int next(Random rnd) {
+        double v;
+        switch (kind) {
+            case FIXED:
+                v = a;
+                break;
+            case UNIFORM:
+                v = a + rnd.nextInt((int) (b - a) + 1);
+                break;
+            case EXPONENTIAL:
+                v = Math.round(-a * Math.log(1 - rnd.nextDouble()));
+                break;
+            default:
+                return 0;
+        }
+        return (int) Math.max(0, Math.min(v, max));
+    }
+
+    /**
+     * Kind of distribution
+     */
+    private final int kind;
+    /**
+     * Distribution parameters
+     */
+    private final double a, b;
+    /**
+     * Maximum payload size
+     */
+    private final int max;
+}
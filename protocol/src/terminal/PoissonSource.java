@@ -0,0 +1,39 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+
+/**
+ * Poisson source: packets arrive with exponentially distributed intervals
+ */
+public class PoissonSource extends SyntheticSource {
+
+    /**
+     * Constructor
+     * @param _packets number of packets to generate
+     * @param _size payload size distribution
+     * @param _rnd random number generator
+     * @param _rate average number of packets per simulation time unit
+     * @throws IllegalArgumentException if the rate is not positive
+     */
+    PoissonSource(int _packets, PayloadSize _size, Random _rnd, double _rate) {
+        super(_packets, _size, _rnd);
+        if (!(_rate > 0)) {
+            throw new IllegalArgumentException("invalid packet rate " + _rate);
+        }
+        this.mean = 1.0 / _rate;
+    }
+
+    @Override
+    long advance(long prev) {
+        return Math.max(prev, 0) + exponential(mean);
+    }
+
+    /**
+     * Average interval between packets
+     */
+    private final double mean;
+}
@@ -0,0 +1,82 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+
+/**
+ * Traffic sink that separates the traffic classes scheduled by a
+ * PrioritySource: the packets of class 0 are delivered to another sink, and
+ * the packets of each class above 0 to a CounterSink of the class, which
+ * checks that each class is received in order.
+ */
+public class PrioritySink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     * @param _inner sink of the packets of class 0
+     * @param _classes number of classes above 0
+     * @param _unordered true if the classes accept the packets out of order
+     */
+    PrioritySink(Terminal _root, TrafficSink _inner, int _classes, boolean _unordered) {
+        this.root = _root;
+        this.inner = _inner;
+        this.sinks = new CounterSink[_classes + 1];
+        for (int c = 1; c <= _classes; c++) {
+            sinks[c] = new CounterSink(_root);
+            if (_unordered) {
+                sinks[c].set_unordered();
+            }
+        }
+    }
+
+    @Override
+    public boolean deliver(long time, String payload) {
+        if (!payload.startsWith(PrioritySource.CLASS_PREFIX)) {
+            if (payload.startsWith(PrioritySource.ESCAPED)) {
+                payload = payload.substring(1);
+            }
+            return inner.deliver(time, payload);
+        }
+        int c, colon;
+        try {
+            colon = payload.indexOf(':');
+            c = Integer.parseInt(payload.substring(PrioritySource.CLASS_PREFIX.length(), colon));
+        } catch (RuntimeException e) {
+            c = -1;
+            colon = -1;
+        }
+        if ((c < 1) || (c >= sinks.length)) {
+            root.Log("\tnetwork received packet of invalid class\n");
+            root.count_statistics(Event.STAT_PAYLOADS_RX_INVALID);
+            return false;
+        }
+        return sinks[c].deliver(time, payload.substring(colon + 1));
+    }
+
+    @Override
+    public boolean has_room() {
+        return inner.has_room();
+    }
+
+    @Override
+    public void close() {
+        inner.close();
+    }
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Sink of the packets of class 0
+     */
+    private final TrafficSink inner;
+    /**
+     * Sink of each class above 0; the index is the class number
+     */
+    private final CounterSink[] sinks;
+}
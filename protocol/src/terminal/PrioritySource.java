@@ -0,0 +1,225 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import simulator.Event;
+import simulator.Log;
+
+/**
+ * Traffic source that schedules the packets of several traffic classes, each
+ * with its own source, into the sending window of the protocol. Class 0 is
+ * the traffic configured for the network layer; the classes 1 to N are
+ * configured with the options protocol.priority.&lt;c&gt;.* and the higher
+ * the class number, the higher its priority. The scheduler is strict priority
+ * or deficit round robin with a weight per class (weighted fair queueing).
+ * The packets of class c &gt; 0 are sent as CLASS_PREFIX + c + ':' + packet;
+ * the packets of class 0 are sent unchanged, except those that start with
+ * CLASS_PREFIX or ESCAPED, which get another MARK. The classes are separated
+ * again by a PrioritySink. Each class keeps its packets in order, and the
+ * protocol retransmits them in the order they were sent. The sources must 
+ * leave room for the header given by header_length.
+ */
+public class PrioritySource implements TrafficSource {
+
+    /**
+     * Character that starts the tagged and the escaped packets
+     */
+    static final char MARK = '~';
+
+    /**
+     * Prefix of the packets of the classes above 0
+     */
+    static final String CLASS_PREFIX = "~Q";
+
+    /**
+     * Start of the escaped packets
+     */
+    static final String ESCAPED = "~~";
+
+    /**
+     * Constructor
+     * @param _sources source of each class; the index is the class number
+     * @param _weights weight of each class, used by the weighted scheduler
+     * @param _weighted true for deficit round robin, false for strict priority
+     */
+    PrioritySource(TrafficSource[] _sources, int[] _weights, boolean _weighted) {
+        int n = _sources.length;
+        this.sources = _sources;
+        this.weighted = _weighted;
+        this.quantum = new int[n];
+        this.deficit = new int[n];
+        this.head = new String[n];
+        this.head_time = new long[n];
+        this.sent = new long[n];
+        this.wait = new LatencyHistogram[n];
+        for (int c = 0; c < n; c++) {
+            quantum[c] = Math.max(1, _weights[c]) * simulator.Frame.MAX_INFO_LENGTH;
+            wait[c] = new LatencyHistogram("Class " + c + " queueing delay");
+        }
+        this.rr = 0;
+    }
+
+    /**
+     * Get the maximum length of the header added to the packets, the class
+     * tag; the escape of class 0 adds a single character
+     * @param classes number of classes above 0
+     * @return the maximum header length
+     */
+    static int header_length(int classes) {
+        return CLASS_PREFIX.length() + Integer.toString(classes).length() + 1;
+    }
+
+    /**
+     * Escapes a packet of class 0 that could be confused with a tagged packet
+     * @param packet the packet
+     * @return the payload sent
+     */
+    static String escape(String packet) {
+        return (packet.startsWith(CLASS_PREFIX) || packet.startsWith(ESCAPED)) ? MARK + packet : packet;
+    }
+
+    /**
+     * Fetches the first packet of each class that has one available
+     * @param time current simulation time
+     * @return true if at least one class has a packet
+     */
+    private boolean fill_heads(long time) {
+        boolean any = false;
+        for (int c = 0; c < sources.length; c++) {
+            if (head[c] == null) {
+                long arrival = sources[c].next_arrival();
+                head[c] = sources[c].poll(time);
+                head_time[c] = ((arrival == Event.UNDEF_TIME) || (arrival > time)) ? time : arrival;
+            }
+            any |= (head[c] != null);
+        }
+        return any;
+    }
+
+    /**
+     * Selects the class with the highest number that has a packet
+     * @return the class selected
+     */
+    private int pick_strict() {
+        int c = sources.length - 1;
+        while (head[c] == null) {
+            c--;
+        }
+        return c;
+    }
+
+    /**
+     * Selects a class with deficit round robin: each visit to a class adds
+     * its quantum to its deficit, and the class sends while the deficit
+     * covers the length of its first packet; idle classes lose their deficit
+     * @return the class selected
+     */
+    private int pick_weighted() {
+        for (int c = 0; c < sources.length; c++) {
+            if (head[c] == null) {
+                deficit[c] = 0;
+            }
+        }
+        while ((head[rr] == null) || (deficit[rr] < head[rr].length())) {
+            rr = (rr + 1) % sources.length;
+            if (head[rr] != null) {
+                deficit[rr] += quantum[rr];
+            }
+        }
+        deficit[rr] -= head[rr].length();
+        return rr;
+    }
+
+    @Override
+    public String poll(long time) {
+        if (!fill_heads(time)) {
+            return null;
+        }
+        int c = weighted ? pick_weighted() : pick_strict();
+        String packet = head[c];
+        head[c] = null;
+        sent[c]++;
+        wait[c].record(time - head_time[c]);
+        return (c == 0) ? escape(packet) : CLASS_PREFIX + c + ':' + packet;
+    }
+
+    @Override
+    public long next_arrival() {
+        long next = Event.UNDEF_TIME;
+        for (int c = 0; c < sources.length; c++) {
+            long t = (head[c] != null) ? head_time[c] : sources[c].next_arrival();
+            if ((t != Event.UNDEF_TIME) && ((next == Event.UNDEF_TIME) || (t < next))) {
+                next = t;
+            }
+        }
+        return next;
+    }
+
+    @Override
+    public void close() {
+        for (TrafficSource s : sources) {
+            s.close();
+        }
+    }
+
+    /**
+     * Writes the number of packets sent and the queueing delay of each class
+     * to a log; the delay is measured from the packet arrival to its
+     * scheduling, and the packets of a saturated source arrive at time 0
+     * @param log the log object
+     */
+    public void print(Log log) {
+        log.Log("\tPriority: " + sources.length + " classes, "
+                + (weighted ? "weighted fair" : "strict") + " scheduling\n");
+        for (int c = sources.length - 1; c >= 0; c--) {
+            log.Log("\t  class " + c + ": sent " + sent[c]
+                    + (weighted ? " quantum " + quantum[c] : "") + "\n");
+            if (wait[c].count() > 0) {
+                log.Log("\t  " + wait[c] + "\n");
+            }
+        }
+    }
+
+
+    /* Variables */
+
+    /**
+     * Source of each class
+     */
+    private final TrafficSource[] sources;
+
+    /**
+     * True for deficit round robin, false for strict priority
+     */
+    private final boolean weighted;
+
+    /**
+     * Quantum and deficit of each class, in characters
+     */
+    private final int[] quantum;
+    private final int[] deficit;
+
+    /**
+     * Class visited by the deficit round robin
+     */
+    private int rr;
+
+    /**
+     * First packet of each class, fetched from its source, or null, and its
+     * arrival time
+     */
+    private final String[] head;
+    private final long[] head_time;
+
+    /**
+     * Number of packets sent by each class
+     */
+    private final long[] sent;
+
+    /**
+     * Queueing delay of the packets of each class
+     */
+    private final LatencyHistogram[] wait;
+}
@@ -0,0 +1,128 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * Traffic sink that reassembles the packets split by a FragmentingSource and
+ * delivers them to another sink. The fragments of a packet arrive in order;
+ * an incomplete packet is discarded when a fragment is missing or when it 
+ * exceeds the maximum size of the reassembly buffer.
+ */
+public class ReassemblingSink implements TrafficSink {
+
+    /**
+     * Constructor
+     * @param _root reference to the main window
+     * @param _inner sink of the packets reassembled
+     * @param _max_size maximum length of a packet reassembled
+     */
+    ReassemblingSink(Terminal _root, TrafficSink _inner, int _max_size) {
+        this.root = _root;
+        this.inner = _inner;
+        this.max_size = _max_size;
+        this.buf = new StringBuilder();
+        this.id = -1;
+    }
+
+    @Override
+    public boolean deliver(long time, String payload) {
+        if (!payload.startsWith(FragmentingSource.FRAGMENT_PREFIX)) {
+            if (payload.startsWith(FragmentingSource.ESCAPED)) {
+                payload = payload.substring(1);
+            }
+            return inner.deliver(time, payload);
+        }
+        int frag_id, index, count, colon;
+        try {
+            int dot = payload.indexOf('.');
+            int slash = payload.indexOf('/', dot);
+            colon = payload.indexOf(':', slash);
+            frag_id = Integer.parseInt(payload.substring(FragmentingSource.FRAGMENT_PREFIX.length(), dot));
+            index = Integer.parseInt(payload.substring(dot + 1, slash));
+            count = Integer.parseInt(payload.substring(slash + 1, colon));
+        } catch (RuntimeException e) {
+            root.Log("\tnetwork received invalid fragment\n");
+            return false;
+        }
+        if (index == 0) {
+            if (id >= 0) {
+                discard();  // Previous packet incomplete
+            }
+            id = frag_id;
+            next_index = 0;
+            buf.setLength(0);
+        }
+        if ((frag_id != id) || (index != next_index)) {
+            if (id >= 0) {
+                discard();
+            }
+            return true;
+        }
+        buf.append(payload, colon + 1, payload.length());
+        next_index++;
+        if (buf.length() > max_size) {
+            discard();
+            return true;
+        }
+        if (next_index == count) {
+            String packet = buf.toString();
+            buf.setLength(0);
+            id = -1;
+            reassembled++;
+            return inner.deliver(time, packet);
+        }
+        return true;
+    }
+
+    /**
+     * Discards the packet being reassembled
+     */
+    private void discard() {
+        root.Log("\tnetwork discarded incomplete packet " + id + "\n");
+        buf.setLength(0);
+        id = -1;
+        discarded++;
+    }
+
+    @Override
+    public boolean has_room() {
+        return inner.has_room();
+    }
+
+    @Override
+    public void close() {
+        if ((reassembled > 0) || (discarded > 0)) {
+            root.Log("\tReassembly: " + reassembled + " packets reassembled, "
+                    + discarded + " discarded\n");
+        }
+        inner.close();
+    }
+
+    /**
+     * Reference to the main window
+     */
+    private final Terminal root;
+    /**
+     * Sink of the packets reassembled
+     */
+    private final TrafficSink inner;
+    /**
+     * Maximum length of a packet reassembled
+     */
+    private final int max_size;
+    /**
+     * Packet being reassembled
+     */
+    private final StringBuilder buf;
+    /**
+     * Identifier of the packet being reassembled, or -1, and the index of the
+     * next fragment
+     */
+    private int id, next_index;
+    /**
+     * Number of packets reassembled and discarded
+     */
+    private long reassembled, discarded;
+}
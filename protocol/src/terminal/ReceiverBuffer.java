@@ -0,0 +1,156 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * Model of a finite receiving buffer between the network layer and a 
+ * consumer that removes packets at a constant rate. The buffer is drained as
+ * a fluid between arrivals. It records the occupancy seen by each arrival and
+ * the time-weighted average occupancy. A rate of 0 models a stalled 
+ * consumer: the buffer never drains.
+ */
+public class ReceiverBuffer {
+
+    /**
+     * Constructor
+     * @param _capacity maximum number of packets stored
+     * @param _rate number of packets consumed per simulation time unit, or 0
+     * if the consumer is stalled
+     * @throws IllegalArgumentException if the capacity is not positive or
+     * the rate is negative
+     */
+    ReceiverBuffer(int _capacity, double _rate) {
+        if ((_capacity <= 0) || !(_rate >= 0)) {
+            throw new IllegalArgumentException("invalid receiver buffer: capacity " + _capacity
+                    + " rate " + _rate);
+        }
+        this.capacity = _capacity;
+        this.rate = _rate;
+        this.occupancy = 0;
+        this.last = 0;
+        this.area = 0;
+        this.max = 0;
+        this.full = 0;
+        this.samples = new LatencyHistogram("Buffer occupancy");
+    }
+
+    /**
+     * Updates the occupancy up to the current time, removing the packets 
+     * consumed since the last update
+     * @param time current simulation time
+     */
+    private void drain(long time) {
+        if (time <= last) {
+            return;
+        }
+        double dt = time - last;
+        if (rate == 0) {
+            area += dt * occupancy;     // Stalled consumer
+            last = time;
+            return;
+        }
+        double empty_at = occupancy / rate;
+        if (empty_at >= dt) {
+            area += dt * (occupancy - rate * dt / 2);
+            occupancy -= rate * dt;
+        } else {
+            area += empty_at * occupancy / 2;
+            occupancy = 0;
+        }
+        last = time;
+    }
+
+    /**
+     * Tests if there is room for a new packet
+     * @param time current simulation time
+     * @return true if a packet can be stored, false otherwise
+     */
+    public boolean has_room(long time) {
+        drain(time);
+        return occupancy + 1 <= capacity;
+    }
+
+    /**
+     * Stores a new packet, if there is room for it
+     * @param time current simulation time
+     * @return true if stored, false if the buffer was full
+     */
+    public boolean accept(long time) {
+        boolean room = has_room(time);
+        samples.record((long) Math.ceil(occupancy));
+        if (!room) {
+            full++;
+            return false;
+        }
+        occupancy += 1;
+        if (occupancy > max) {
+            max = occupancy;
+        }
+        return true;
+    }
+
+    /**
+     * Counts a packet refused by the data link layer because the buffer was full
+     */
+    public void refused() {
+        full++;
+    }
+
+    /**
+     * Returns the number of free positions, rounded down
+     * @param time current simulation time
+     * @return the number of packets that can be stored
+     */
+    public int free(long time) {
+        drain(time);
+        return (int) Math.max(0, Math.floor(capacity - occupancy));
+    }
+
+    /**
+     * Writes a summary of the buffer usage to a log
+     * @param log the log object
+     * @param time current simulation time
+     */
+    public void print(simulator.Log log, long time) {
+        drain(time);
+        log.Log("\tReceiver buffer: capacity=" + capacity + " rate=" + rate
+                + " full=" + full + " max=" + String.format("%.2f", max)
+                + " avg=" + String.format("%.2f", (time > 0) ? area / time : 0.0) + "\n");
+        log.Log("\t" + samples + "\n");
+    }
+
+    /**
+     * Buffer capacity in packets
+     */
+    private final int capacity;
+    /**
+     * Consumption rate in packets per time unit
+     */
+    private final double rate;
+    /**
+     * Current occupancy
+     */
+    private double occupancy;
+    /**
+     * Time of the last occupancy update
+     */
+    private long last;
+    /**
+     * Integral of the occupancy over time
+     */
+    private double area;
+    /**
+     * Maximum occupancy
+     */
+    private double max;
+    /**
+     * Number of packets refused or dropped with the buffer full
+     */
+    private long full;
+    /**
+     * Occupancy seen by the arriving packets
+     */
+    private final LatencyHistogram samples;
+}
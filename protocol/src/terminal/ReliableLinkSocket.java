@@ -0,0 +1,372 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Base64;
+import simulator.Event;
+import simulator.Log;
+
+/**
+ * Byte stream interface over a reliable link (e.g. GoBackN or 
+ * SelectiveRepeat). The bytes written to the output stream are segmented 
+ * into packets with the format used by the file transfer mode 
+ * ("D&lt;n&gt;:&lt;data&gt;"); closing the output stream sends an end
+ * packet ("E") and the peer input stream returns end of file after reading 
+ * all the data. Both directions use bounded buffers; the streams block when
+ * they are full (output) or empty (input), and the *_nonblocking methods 
+ * transfer only what is possible without blocking. When the receive buffer
+ * is full the link stops accepting frames, so the sender is slowed down.
+ * The socket is attached to a Terminal with Terminal.attach before starting
+ * the simulation.
+ */
+public class ReliableLinkSocket {
+
+    /**
+     * End of stream packet
+     */
+    static final String END = "E";
+
+    /**
+     * Constructor
+     * @param send_buffer size of the sending buffer in bytes
+     * @param recv_buffer size of the receiving buffer in bytes, at least
+     *                    FileSource.CHUNK_BYTES
+     * @throws IllegalArgumentException if a buffer size is invalid
+     */
+    public ReliableLinkSocket(int send_buffer, int recv_buffer) {
+        if (send_buffer <= 0) {
+            throw new IllegalArgumentException("send buffer size must be above 0");
+        }
+        if (recv_buffer < FileSource.CHUNK_BYTES) {
+            throw new IllegalArgumentException("receive buffer smaller than a segment");
+        }
+        this.snd = new ByteRing(send_buffer);
+        this.rcv = new ByteRing(recv_buffer);
+        this.segment = new byte[FileSource.CHUNK_BYTES];
+        this.poll_interval = Options.get_long("flow.poll", 1);
+        this.first_time = Event.UNDEF_TIME;
+        this.in = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return read_blocking(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                synchronized (ReliableLinkSocket.this) {
+                    return rcv.count;
+                }
+            }
+        };
+        this.out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                write_blocking(b, off, len);
+            }
+
+            @Override
+            public void close() {
+                synchronized (ReliableLinkSocket.this) {
+                    out_closed = true;
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the input stream with the bytes received from the peer
+     * @return the input stream
+     */
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    /**
+     * Get the output stream with the bytes sent to the peer
+     * @return the output stream
+     */
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * Writes the bytes that fit in the sending buffer, without blocking
+     * @param b data
+     * @param off offset of the first byte
+     * @param len number of bytes
+     * @return the number of bytes written
+     * @throws IOException if the output was closed or the link ended
+     */
+    public synchronized int write_nonblocking(byte[] b, int off, int len) throws IOException {
+        if (out_closed || link_closed) {
+            throw new IOException("socket closed");
+        }
+        return snd.write(b, off, len);
+    }
+
+    /**
+     * Reads the bytes available in the receiving buffer, without blocking
+     * @param b buffer
+     * @param off offset of the first byte
+     * @param len maximum number of bytes
+     * @return the number of bytes read, 0 if none is available, or -1 at
+     *         the end of the stream
+     */
+    public synchronized int read_nonblocking(byte[] b, int off, int len) {
+        if (rcv.count == 0) {
+            return (in_eof || link_closed) ? -1 : 0;
+        }
+        int n = rcv.read(b, off, len);
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Writes all the bytes, waiting for room in the sending buffer
+     */
+    private synchronized void write_blocking(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = write_nonblocking(b, off, len);
+            off += n;
+            len -= n;
+            if (len > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new java.io.InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads at least one byte, waiting for data in the receiving buffer
+     */
+    private synchronized int read_blocking(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n;
+        while ((n = read_nonblocking(b, off, len)) == 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new java.io.InterruptedIOException();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Get the traffic source that segments the output stream
+     * @return the traffic source
+     */
+    TrafficSource source() {
+        return new TrafficSource() {
+            @Override
+            public String poll(long time) {
+                synchronized (ReliableLinkSocket.this) {
+                    last_poll = time;
+                    if (snd.count == 0) {
+                        if (out_closed && !end_sent) {
+                            end_sent = true;
+                            return END;
+                        }
+                        return null;
+                    }
+                    int len = snd.read(segment, 0, segment.length);
+                    ReliableLinkSocket.this.notifyAll();
+                    sent += len;
+                    byte[] data = (len == segment.length) ? segment : java.util.Arrays.copyOf(segment, len);
+                    return FileSource.DATA + Long.toString(segments_sent++) + ":"
+                            + Base64.getEncoder().encodeToString(data);
+                }
+            }
+
+            @Override
+            public long next_arrival() {
+                synchronized (ReliableLinkSocket.this) {
+                    if ((snd.count > 0) || (out_closed && !end_sent)) {
+                        return last_poll;
+                    }
+                    return (end_sent || link_closed) ? Event.UNDEF_TIME : last_poll + poll_interval;
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Get the traffic sink that reassembles the input stream
+     * @param log object used to log the throughput at the end
+     * @return the traffic sink
+     */
+    TrafficSink sink(Log log) {
+        return new TrafficSink() {
+            @Override
+            public boolean deliver(long time, String packet) {
+                synchronized (ReliableLinkSocket.this) {
+                    if (packet.equals(END)) {
+                        in_eof = true;
+                        last_time = time;
+                        ReliableLinkSocket.this.notifyAll();
+                        return true;
+                    }
+                    try {
+                        int sep = packet.indexOf(':');
+                        if ((packet.charAt(0) != FileSource.DATA) || (sep < 0)
+                                || (Long.parseLong(packet.substring(1, sep)) != segments_received)) {
+                            return false;
+                        }
+                        byte[] data = Base64.getDecoder().decode(packet.substring(sep + 1));
+                        if (data.length > rcv.free()) {
+                            return false;
+                        }
+                        rcv.write(data, 0, data.length);
+                        segments_received++;
+                        received += data.length;
+                        if (first_time == Event.UNDEF_TIME) {
+                            first_time = time;
+                            first_nanos = System.nanoTime();
+                        }
+                        last_time = time;
+                        last_nanos = System.nanoTime();
+                        ReliableLinkSocket.this.notifyAll();
+                        return true;
+                    } catch (RuntimeException e) {
+                        return false;
+                    }
+                }
+            }
+
+            @Override
+            public boolean has_room() {
+                synchronized (ReliableLinkSocket.this) {
+                    return rcv.free() >= FileSource.CHUNK_BYTES;
+                }
+            }
+
+            @Override
+            public void close() {
+                synchronized (ReliableLinkSocket.this) {
+                    link_closed = true;
+                    ReliableLinkSocket.this.notifyAll();
+                    long elapsed = (first_time == Event.UNDEF_TIME) ? 0 : last_time - first_time;
+                    double secs = (last_nanos - first_nanos) / 1e9;
+                    log.Log("\tSocket: sent " + sent + " bytes, received " + received
+                            + " bytes in " + elapsed + " time units ("
+                            + String.format("%.2f", (elapsed > 0) ? ((double) received) / elapsed : 0.0)
+                            + " bytes/unit, " + String.format("%.3f", (secs > 0) ? received / secs / 1e6 : 0.0)
+                            + " MB/s)\n");
+                }
+            }
+        };
+    }
+
+
+    /**
+     * Circular byte buffer; not synchronized
+     */
+    private static final class ByteRing {
+
+        ByteRing(int capacity) {
+            buf = new byte[capacity];
+            head = 0;
+            count = 0;
+        }
+
+        int free() {
+            return buf.length - count;
+        }
+
+        int write(byte[] b, int off, int len) {
+            int n = Math.min(len, free());
+            for (int done = 0; done < n; ) {
+                int tail = (head + count) % buf.length;
+                int k = Math.min(n - done, buf.length - tail);
+                System.arraycopy(b, off + done, buf, tail, k);
+                count += k;
+                done += k;
+            }
+            return n;
+        }
+
+        int read(byte[] b, int off, int len) {
+            int n = Math.min(len, count);
+            for (int done = 0; done < n; ) {
+                int k = Math.min(n - done, buf.length - head);
+                System.arraycopy(buf, head, b, off + done, k);
+                head = (head + k) % buf.length;
+                count -= k;
+                done += k;
+            }
+            return n;
+        }
+
+        private final byte[] buf;
+        private int head;
+        private int count;
+    }
+
+
+    /* Variables */
+
+    /**
+     * Sending and receiving buffers
+     */
+    private final ByteRing snd, rcv;
+    /**
+     * Buffer with the segment being sent
+     */
+    private final byte[] segment;
+    /**
+     * Interval between polls when the sending buffer is empty
+     */
+    private final long poll_interval;
+    /**
+     * Stream objects
+     */
+    private final InputStream in;
+    private final OutputStream out;
+    /**
+     * Stream state
+     */
+    private boolean out_closed, end_sent, in_eof, link_closed;
+    /**
+     * Segment numbers of the next segment sent and received
+     */
+    private long segments_sent, segments_received;
+    /**
+     * Bytes sent and received
+     */
+    private long sent, received;
+    /**
+     * Simulation time of the last poll of the source
+     */
+    private long last_poll;
+    /**
+     * Simulation and real time of the first and last segment received
+     */
+    private long first_time, last_time, first_nanos, last_nanos;
+}
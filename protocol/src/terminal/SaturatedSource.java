@@ -0,0 +1,22 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+
+/**
+ * Saturated source: all the packets are available from the beginning
+ */
+public class SaturatedSource extends SyntheticSource {
+
+    SaturatedSource(int _packets, PayloadSize _size, Random _rnd) {
+        super(_packets, _size, _rnd);
+    }
+
+    @Override
+    long advance(long prev) {
+        return 0;
+    }
+}
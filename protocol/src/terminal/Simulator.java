@@ -81,6 +81,34 @@ public interface Simulator extends simulator.Log {
      */
     boolean isactive_data_timer();
     
+    /**
+     * Start the data timer associated to a key, for protocols that use one 
+     * timer per frame; method handle_Data_Timer(time, key) of the protocol 
+     * will be called after the timeout time. Key 0 is the single data timer.
+     * @param key timer key, equal to or above 0
+     */
+    void start_data_timer(int key);
+
+    /**
+     * Start the data timer with a given delay instead of the timeout time;
+     * method handle_Data_Timer of the protocol will be called after the delay.
+     * @param delay the timer interval, equal to or above 0
+     */
+    void start_data_timer_after(long delay);
+    
+    /**
+     * Cancels the data timer associated to a key.
+     * @param key timer key, equal to or above 0
+     */
+    void cancel_data_timer(int key);
+    
+    /**
+     * Checks if the data timer associated to a key is active.
+     * @param key timer key, equal to or above 0
+     * @return true if timer is active
+     */
+    boolean isactive_data_timer(int key);
+    
     /**
      * Starts an ACK timer to wait for the transmission of a data frame before sending the ACK
      */
@@ -97,6 +125,26 @@ public interface Simulator extends simulator.Log {
      */
     boolean isactive_ack_timer();
 
+    /**
+     * Starts the probe timer, used to send a tail-loss probe; method
+     * handle_probe_Timer of the protocol will be called after the delay.
+     * It is sent to the channel as the DATA timer with key max_seq + 1, so
+     * the keyed DATA timers must use keys up to the maximum sequence number.
+     * @param delay the timer interval, equal to or above 0
+     */
+    void start_probe_timer(long delay);
+
+    /**
+     * Cancels the probe timer
+     */
+    void cancel_probe_timer();
+
+    /**
+     * Test if the probe timer is active
+     * @return true if the probe timer is active
+     */
+    boolean isactive_probe_timer();
+
     /**
      * Stop the simulation
      */
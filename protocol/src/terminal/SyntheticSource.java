@@ -0,0 +1,136 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.util.Random;
+import simulator.Event;
+
+/**
+ * Base class of the traffic sources that generate numbered packets. Each
+ * packet starts with its number, which is validated by the receiving network
+ * layer, padded with '_' and 'x' characters up to the payload size drawn.
+ * The subclasses define the packet arrival process.
+ */
+public abstract class SyntheticSource implements TrafficSource {
+
+    /**
+     * Constructor
+     * @param _packets number of packets to generate
+     * @param _size payload size distribution
+     * @param _rnd random number generator
+     */
+    SyntheticSource(int _packets, PayloadSize _size, Random _rnd) {
+        this.packets = _packets;
+        this.size = _size;
+        this.rnd = _rnd;
+        this.cnt = 0;
+        this.arrival = Event.UNDEF_TIME;
+        this.started = false;
+    }
+
+    /**
+     * Computes the arrival time of the next packet
+     * @param prev arrival time of the previous packet, or Event.UNDEF_TIME
+     *             for the first packet
+     * @return the arrival time, or Event.UNDEF_TIME if there are no more packets
+     */
+    abstract long advance(long prev);
+
+    /**
+     * Draws the size of the next payload
+     * @return the payload size
+     */
+    int next_size() {
+        return size.next(rnd);
+    }
+
+    /**
+     * Creates a numbered payload with a minimum size
+     * @param n packet number
+     * @param size payload size
+     * @return the payload
+     */
+    static String make_payload(int n, int size) {
+        String num = Integer.toString(n);
+        if (size <= num.length()) {
+            return num;
+        }
+        StringBuilder sb = new StringBuilder(size);
+        sb.append(num).append('_');
+        while (sb.length() < size) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Computes the arrival of the first packet, the first time it is needed
+     */
+    private void start() {
+        if (!started) {
+            started = true;
+            arrival = advance(Event.UNDEF_TIME);
+        }
+    }
+
+    @Override
+    public String poll(long time) {
+        start();
+        if ((cnt >= packets) || (arrival == Event.UNDEF_TIME) || (arrival > time)) {
+            return null;
+        }
+        String msg = make_payload(cnt, next_size());
+        cnt++;
+        arrival = advance(arrival);
+        return msg;
+    }
+
+    @Override
+    public long next_arrival() {
+        start();
+        return (cnt >= packets) ? Event.UNDEF_TIME : arrival;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Draws an exponentially distributed interval
+     * @param mean average value
+     * @return the interval, rounded to the simulation time unit
+     */
+    long exponential(double mean) {
+        return Math.round(-mean * Math.log(1 - rnd.nextDouble()));
+    }
+
+
+    /* Variables */
+
+    /**
+     * Number of packets to generate
+     */
+    private final int packets;
+    /**
+     * Payload size distribution
+     */
+    private final PayloadSize size;
+    /**
+     * Random number generator
+     */
+    final Random rnd;
+    /**
+     * Number of packets generated
+     */
+    private int cnt;
+    /**
+     * Arrival time of the next packet
+     */
+    private long arrival;
+    /**
+     * True after computing the first arrival
+     */
+    private boolean started;
+}
@@ -12,9 +12,12 @@ import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.HashMap;
+import java.util.concurrent.Flow;
 import javax.swing.JFileChooser;
+import protocol.Base_Protocol;
 import protocol.Callbacks;
 import protocol.GoBackN;
+import protocol.NChannelStopWait;
 import protocol.SelectiveRepeat;
 import protocol.Simplex_rcv;
 import protocol.Simplex_snd;
@@ -36,6 +39,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
 
     private static final int ACK_TIMER_ID = -1;
     private static final int DATA_TIMER_ID = 1;
+    private static final int NET_TIMER_ID = 0;
 
     /**
      * Interval that the protocol waits for a data frame before sending an ACK
@@ -52,12 +56,16 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         conn = null;
         proto = null;
         net = null;
+        metrics = null;
         time = Event.UNDEF_TIME;
         ack_timer_on = false;
         timer_on = new HashMap<>();
         transmitted_data= new HashMap<>();
         sending_data= false;
         last_nak= -1;
+        monitor = new LinkMonitor(this);
+        monitor.register();
+        Options.set_log(this);
     }
 
     /**
@@ -183,7 +191,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         jTextRcvWND.setPreferredSize(new java.awt.Dimension(35, 28));
         jPanel2.add(jTextRcvWND);
 
-        jComboBoxProtocol.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Utopian Snd", "Utopian Rcv", "Simplex Snd", "Simplex Rcv", "Stop & Wait", "Go-Back-N", "Selec. Repeat" }));
+        jComboBoxProtocol.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Utopian Snd", "Utopian Rcv", "Simplex Snd", "Simplex Rcv", "Stop & Wait", "Go-Back-N", "Selec. Repeat", "N-chan. S&W" }));
         jComboBoxProtocol.setMaximumSize(new java.awt.Dimension(120, 27));
         jComboBoxProtocol.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
@@ -330,6 +338,139 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         this.time = _time;
     }
 
+    /**
+     * Sets the Data timeout time in the GUI; called from the JMX thread, the
+     * text field is updated in the event dispatch thread
+     *
+     * @param timeout the new timeout value
+     */
+    void set_config_timeout(final long timeout) {
+        cfg_timeout = timeout;
+        java.awt.EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                jTextTimeout.setText(Long.toString(timeout));
+            }
+        });
+    }
+
+    /**
+     * Sets the sending and receiving window sizes in the GUI; called from the
+     * JMX thread, the text fields are updated in the event dispatch thread
+     *
+     * @param swnd the sending window size
+     * @param rwnd the receiving window size
+     */
+    void set_config_windows(final int swnd, final int rwnd) {
+        cfg_send_window = swnd;
+        cfg_recv_window = rwnd;
+        java.awt.EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                jTextSndWND.setText(Integer.toString(swnd));
+                jTextRcvWND.setText(Integer.toString(rwnd));
+            }
+        });
+    }
+
+    /**
+     * Attaches application code to the link: the payloads published by 
+     * outbound are sent by the protocol as its sending window opens, and the
+     * packets received in order are published to inbound, with backpressure.
+     * Used in the next simulation started; null detaches.
+     *
+     * @param outbound publisher of the payloads to send, or null
+     * @param inbound subscriber of the packets received, or null
+     */
+    public void attach(Flow.Publisher<String> outbound, Flow.Subscriber<String> inbound) {
+        this.flow_out = outbound;
+        this.flow_in = inbound;
+    }
+
+    /**
+     * Attaches a byte stream socket to the link, used in the next simulation
+     * started instead of the configured traffic source; null detaches.
+     *
+     * @param socket the socket, or null
+     */
+    public void attach(ReliableLinkSocket socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Attaches the link to a bond, used in the next simulation started: the
+     * link carries part of the traffic shared by all the links of the bond;
+     * null detaches.
+     *
+     * @param bond the bond, or null
+     */
+    public void attach(LinkBond bond) {
+        this.bond = bond;
+    }
+
+    /**
+     * Returns the bond the link belongs to
+     *
+     * @return the bond, or null
+     */
+    LinkBond get_bond() {
+        return bond;
+    }
+
+    /**
+     * Returns the socket attached to the link
+     *
+     * @return the socket, or null
+     */
+    ReliableLinkSocket get_socket() {
+        return socket;
+    }
+
+    /**
+     * Returns the application publisher attached to the link
+     *
+     * @return the publisher, or null
+     */
+    Flow.Publisher<String> get_flow_publisher() {
+        return flow_out;
+    }
+
+    /**
+     * Returns the application subscriber attached to the link
+     *
+     * @return the subscriber, or null
+     */
+    Flow.Subscriber<String> get_flow_subscriber() {
+        return flow_in;
+    }
+
+    /**
+     * Tests if a simulation is running
+     *
+     * @return true if running, false otherwise
+     */
+    boolean is_running() {
+        return running;
+    }
+
+    /**
+     * Returns the protocol object of the running simulation
+     *
+     * @return the protocol object, or null
+     */
+    Callbacks get_protocol() {
+        return proto;
+    }
+
+    /**
+     * Returns the metrics of the running simulation
+     *
+     * @return the link metrics, or null
+     */
+    LinkMetrics get_metrics() {
+        return metrics;
+    }
+
     /**
      * Closes all the objects, connections and stops any running simulation
      */
@@ -346,6 +487,28 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 Log("\tSending Window:   \t" + get_send_window() + "\n");
                 Log("\tReceiving Window: \t" + get_recv_window() + "\n");
                 Log("\tTimeout:          \t" + get_timeout_time() + "\n");
+                if (metrics != null) {
+                    Log("\nMetrics:\n");
+                    metrics.print(this);
+                }
+                if (fec_enc != null) {
+                    fec_enc.print(this);
+                    fec_dec.print(this);
+                }
+                if (proto instanceof Base_Protocol) {
+                    Base_Protocol bp = (Base_Protocol) proto;
+                    Log("\t" + bp.rto_estimator() + "\n\t" + bp.window_controller()
+                            + "\n\t" + bp.ack_policy() + "\n");
+                    if (bp.fast_retransmissions() > 0) {
+                        Log("\tFast retransmissions: " + bp.fast_retransmissions() + "\n");
+                    }
+                    if (bp.probes_sent() > 0) {
+                        Log("\tTail-loss probes: " + bp.probes_sent() + "\n");
+                    }
+                    if (bp.window_probes() > 0) {
+                        Log("\tZero window probes: " + bp.window_probes() + "\n");
+                    }
+                }
 
                 if (running) {
                     proto.end_simulation(time);
@@ -359,8 +522,11 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
             // Stop network object
             if (net != null) {
                 // Statistics
+                net.close();
                 net = null;
             }
+            metrics = null;
+            config_loaded = false;
             if (conn != null) {
                 conn.stopRunning();
                 conn = null;
@@ -387,6 +553,19 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         }
     }
 
+    /**
+     * Reads the configuration from the GUI once, when connecting; the getters
+     * return these values until the connection is closed, avoiding parsing 
+     * the text fields in every sequence number and timer operation
+     */
+    private void load_config() {
+        cfg_max_seq = get_max_sequence();
+        cfg_send_window = get_send_window();
+        cfg_recv_window = get_recv_window();
+        cfg_timeout = get_timeout_time();
+        config_loaded = true;
+    }
+
     /**
      * Handles button "Connect" in the GUI that starts/stop the simulations
      *
@@ -395,11 +574,13 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
     private void jToggleButtonConnectActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jToggleButtonConnectActionPerformed
         if (jToggleButtonConnect.isSelected()) {
             // Verify parameters
-            if ((get_send_window() + get_recv_window()) > (get_max_sequence() + 1)) {
+            if ((get_send_window() < 1) || (get_recv_window() < 1) || (get_max_sequence() < 1)
+                    || ((long) get_send_window() + get_recv_window() > (long) get_max_sequence() + 1)) {
                 Log("Invalid SND window, RCV window or Max sequence\n");
                 jToggleButtonConnect.setSelected(false);
                 return;
             }
+            load_config();
             // Button is ON
             try {
                 InetAddress ip = InetAddress.getByName(jTextIP.getText());
@@ -410,6 +591,10 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 }
                 conn = new Connection(this, s);
                 net = new NetworkLayer(this);
+                metrics = new LinkMetrics(Math.max(get_send_window(), get_recv_window()));
+                int fec_k = Options.get_int("fec.k", 0);
+                fec_enc = (fec_k > 0) ? new FecEncoder(fec_k, get_max_sequence()) : null;
+                fec_dec = (fec_k > 0) ? new FecDecoder(fec_k, get_max_sequence()) : null;
                 switch (jComboBoxProtocol.getSelectedIndex()) {
                     case 0: // Utopian protocol - sender
                         proto = new Utopian_snd(this, net);
@@ -434,6 +619,9 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                     case 6: // Selective repeat protocol
                         proto = new SelectiveRepeat(this, net);
                         break;
+                    case 7: // N-channel Stop&Wait protocol
+                        proto = new NChannelStopWait(this, net);
+                        break;
                     default:
                         Log("Protocol " + (jComboBoxProtocol.getSelectedIndex() + 1) + " not implemented yet\n");
                 }
@@ -445,8 +633,13 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 } else {
                     close_all();
                 }
+            } catch (IllegalArgumentException e) {
+                // Configuration rejected by the protocol (e.g. ring buffer size)
+                Log("Invalid configuration: " + e.getMessage() + "\n");
+                close_all();
             } catch (Exception e) {
                 Log("Error connecting to channel\n");
+                config_loaded = false;
                 jToggleButtonConnect.setSelected(false);
             }
 
@@ -497,6 +690,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
         close_all();
+        monitor.unregister();
     }//GEN-LAST:event_formWindowClosing
 
     /**
@@ -522,6 +716,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 jTextRcvWND.setText("1");
                 break;
             case 6:
+            case 7:
                 jTextSndWND.setText("" + ((maxs + 1) / 2));
                 jTextRcvWND.setText("" + ((maxs + 1) / 2));
                 break;
@@ -553,29 +748,76 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                     }
                     break;
                 case Event.DATA_END:
-                    sending_data= false;
                     Log(time + " Data End ("+ev.key()+")\n");
-                    proto.handle_Data_end(time, ev.key());
+                    int end_seq = ev.key();
+                    if (fec_enc != null) {
+                        if (fec_enc.parity_in_flight) {
+                            // End of the parity frame: deliver the delayed event
+                            fec_enc.parity_in_flight = false;
+                            end_seq = fec_enc.delayed_end;
+                        } else {
+                            Frame parity = fec_enc.take_parity();
+                            if (parity != null) {
+                                send_parity(parity);
+                                fec_enc.delayed_end = end_seq;
+                                fec_enc.parity_in_flight = true;
+                                break;
+                            }
+                        }
+                    }
+                    sending_data= false;
+                    FlightEvents.DataEnd jfr_end = null;
+                    if (FlightEvents.DATA_END.isEnabled()) {
+                        jfr_end = new FlightEvents.DataEnd();
+                        jfr_end.begin();
+                    }
+                    proto.handle_Data_end(time, end_seq);
+                    if (jfr_end != null) {
+                        jfr_end.end();
+                        if (jfr_end.shouldCommit()) {
+                            jfr_end.seq = end_seq;
+                            jfr_end.simTime = time;
+                            jfr_end.commit();
+                        }
+                    }
                     break;
                 case Event.TIMER_EVENT:
                     if (ev.key() == ACK_TIMER_ID) {
                         if (ack_timer_on) {
                             ack_timer_on = false;   // Turns flag off before calling callback
                             Log(time + " Ack Timeout ()\n");
+                            FlightEvents.Timeout jfr_ack = begin_timeout();
                             proto.handle_ack_Timer(time);
+                            commit_timeout(jfr_ack, ACK_TIMER_ID);
+                        }
+                    } else if (ev.key() == probe_timer_key()) {
+                        if (timer_on.containsKey(ev.key())) {
+                            timer_on.remove(ev.key());   // Turns flag off before calling callback
+                            Log(time + " Probe Timeout ()\n");
+                            FlightEvents.Timeout jfr_probe = begin_timeout();
+                            proto.handle_probe_Timer(time);
+                            commit_timeout(jfr_probe, ev.key());
+                        }
+                    } else if (ev.key() == NET_TIMER_ID) {
+                        if (timer_on.containsKey(NET_TIMER_ID)) {
+                            timer_on.remove(NET_TIMER_ID);
+                            proto.handle_network_ready(time);
                         }
                     } else {
                         if (timer_on.containsKey(ev.key())) {
-                            if (ev.key() != DATA_TIMER_ID) {
-                                // Using a single ID timer!
-                                return;
-                            }
                             timer_on.remove(ev.key());
                             // Call handle_event
-                            // Log(time + " Data Timeout ("+ev.key()+")\n");
-                            Log(time + " Data Timeout ()\n");
-                            // proto.handle_Data_Timer(time, ev.key());
-                            proto.handle_Data_Timer(time);
+                            if (ev.key() == DATA_TIMER_ID) {
+                                Log(time + " Data Timeout ()\n");
+                            } else {
+                                Log(time + " Data Timeout (" + (ev.key() - DATA_TIMER_ID) + ")\n");
+                            }
+                            if (metrics != null) {
+                                metrics.data_timeout();
+                            }
+                            FlightEvents.Timeout jfr_data = begin_timeout();
+                            proto.handle_Data_Timer(time, ev.key() - DATA_TIMER_ID);
+                            commit_timeout(jfr_data, ev.key());
                         }
                     }
                     break;
@@ -591,6 +833,16 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                         return;
                     }
                     ev.frame().set_recvTime(time);
+                    if ((fec_dec != null) && (ev.frame().kind() == Frame.DATA_FRAME)) {
+                        if (ParityCodec.is_parity(ev.frame().info())) {
+                            receive_parity(ev.frame());
+                            break;
+                        }
+                        fec_dec.data_received(ev.frame());
+                    }
+                    if (metrics != null) {
+                        metrics.frame_received(ev.frame());
+                    }
                     
                     Log(time + " Frame received: " + ev.frame().toString() + "\n");
                     
@@ -608,7 +860,24 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                     }
                     
                     // Call handle_event
+                    FlightEvents.FrameReceived jfr_rcv = null;
+                    if (FlightEvents.FRAME_RECEIVED.isEnabled()) {
+                        jfr_rcv = new FlightEvents.FrameReceived();
+                        jfr_rcv.begin();
+                    }
                     proto.from_physical_layer(time, ev.frame());
+                    if (jfr_rcv != null) {
+                        jfr_rcv.end();
+                        if (jfr_rcv.shouldCommit()) {
+                            Frame f = ev.frame();
+                            jfr_rcv.kind = f.kindString();
+                            jfr_rcv.seq = f.seq();
+                            jfr_rcv.ack = f.ack();
+                            jfr_rcv.simTime = time;
+                            jfr_rcv.delay = (f.snd_time() == Event.UNDEF_TIME) ? -1 : time - f.snd_time();
+                            jfr_rcv.commit();
+                        }
+                    }
                     break;
                 case Event.STOP_EVENT:
                     close_all();
@@ -643,6 +912,74 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         }
     }
 
+    /**
+     * Starts a JFR Timeout event before a timer callback, if enabled
+     *
+     * @return the event object, or null if not enabled
+     */
+    private FlightEvents.Timeout begin_timeout() {
+        if (!FlightEvents.TIMEOUT.isEnabled()) {
+            return null;
+        }
+        FlightEvents.Timeout jfr = new FlightEvents.Timeout();
+        jfr.begin();
+        return jfr;
+    }
+
+    /**
+     * Ends and commits a JFR Timeout event started before a timer callback
+     *
+     * @param jfr the event object, or null if not enabled
+     * @param key the timer key
+     */
+    private void commit_timeout(FlightEvents.Timeout jfr, int key) {
+        if (jfr == null) {
+            return;
+        }
+        jfr.end();
+        if (jfr.shouldCommit()) {
+            jfr.key = key;
+            jfr.simTime = time;
+            jfr.commit();
+        }
+    }
+
+    /**
+     * Commits a JFR TimerStart event, if enabled
+     *
+     * @param key the timer key
+     * @param interval the timer interval
+     */
+    private void commit_timer_start(int key, long interval) {
+        if (!FlightEvents.TIMER_START.isEnabled()) {
+            return;
+        }
+        FlightEvents.TimerStart jfr = new FlightEvents.TimerStart();
+        if (jfr.shouldCommit()) {
+            jfr.key = key;
+            jfr.interval = interval;
+            jfr.simTime = time;
+            jfr.commit();
+        }
+    }
+
+    /**
+     * Commits a JFR TimerCancel event, if enabled
+     *
+     * @param key the timer key
+     */
+    private void commit_timer_cancel(int key) {
+        if (!FlightEvents.TIMER_CANCEL.isEnabled()) {
+            return;
+        }
+        FlightEvents.TimerCancel jfr = new FlightEvents.TimerCancel();
+        if (jfr.shouldCommit()) {
+            jfr.key = key;
+            jfr.simTime = time;
+            jfr.commit();
+        }
+    }
+
     /**
      * Method called by the Connection thread when the TCP connection ends
      *
@@ -664,6 +1001,9 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     @Override
     public int get_send_window() {
+        if (config_loaded) {
+            return cfg_send_window;
+        }
         try {
             return Integer.parseInt(jTextSndWND.getText());
         } catch (Exception e) {
@@ -679,6 +1019,9 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     @Override
     public int get_recv_window() {
+        if (config_loaded) {
+            return cfg_recv_window;
+        }
         try {
             return Integer.parseInt(jTextRcvWND.getText());
         } catch (Exception e) {
@@ -694,6 +1037,9 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     @Override
     public int get_max_sequence() {
+        if (config_loaded) {
+            return cfg_max_seq;
+        }
         try {
             return Integer.parseInt(jTextMaxSeq.getText());
         } catch (Exception e) {
@@ -709,6 +1055,9 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     @Override
     public long get_timeout_time() {
+        if (config_loaded) {
+            return cfg_timeout;
+        }
         try {
             return Long.parseLong(jTextTimeout.getText());
         } catch (Exception e) {
@@ -763,14 +1112,43 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         start_data_timer();
     }
     
+    /**
+     * Start the DATA timer associated to a key; key 0 is the single DATA timer.
+     *
+     * @param key a number equal to or above 0
+     */
+    @Override
+    public void start_data_timer(int key) {
+        start_timer(DATA_TIMER_ID + key);
+    }
+
+    /**
+     * Start the DATA timer with a given delay
+     *
+     * @param delay the timer interval
+     */
+    @Override
+    public void start_data_timer_after(long delay) {
+        start_timer(DATA_TIMER_ID, delay);
+    }
+
     /**
      * Start a timer for delay, associated to key "key"
      *
      * @param key a number equal to or above 0
      */
     public void start_timer(int key) {
+        start_timer(key, get_timeout_time());
+    }
+
+    /**
+     * Start a timer for delay, associated to key "key"
+     *
+     * @param key a number equal to or above 0
+     * @param delay the timer interval
+     */
+    private void start_timer(int key, long delay) {
         try {
-            long delay = get_timeout_time();
             if (delay < 0) {
                 Log(time + " INVALID start_data_timer: delay must be >= 0\n");
                 return;
@@ -780,6 +1158,8 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
             if (key >= 0) {
                 if (key == DATA_TIMER_ID)
                     Log(time + " start_data_timer (" + delay + ")\n");
+                else if (key == NET_TIMER_ID)
+                    Log(time + " start_network_timer (" + delay + ")\n");
                 else
                     Log(time + " start_timer (" + key + "," + delay + ")\n");
             } else {
@@ -789,11 +1169,24 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
             timer_on.put(key, time);
             String txt = ev.event_to_str();
             conn.send_message(txt);
+            commit_timer_start(key, delay);
         } catch (Exception ex) {
             Log("Error in start_timer: " + ex + "\n");
         }
     }
 
+    /**
+     * Start the network timer, that notifies the protocol when the network
+     * layer has a new packet available; ignored if the timer is active.
+     *
+     * @param at time when the next packet is available
+     */
+    void start_network_timer(long at) {
+        if (!isactive_timer(NET_TIMER_ID)) {
+            start_timer(NET_TIMER_ID, Math.max(at - time, 0));
+        }
+    }
+
     /**
      * Cancel the DATA timer
      */
@@ -802,6 +1195,16 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         cancel_timer(DATA_TIMER_ID);
     }
 
+    /**
+     * Cancel the DATA timer associated to a key
+     *
+     * @param key a number equal to or above 0
+     */
+    @Override
+    public void cancel_data_timer(int key) {
+        cancel_timer(DATA_TIMER_ID + key);
+    }
+
     /**
      * Cancel the timer associated with key "key"
      *
@@ -820,6 +1223,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                         
                     String txt = ev.event_to_str();
                     conn.send_message(txt);
+                    commit_timer_cancel(key);
                 }
             } else {
                 Log(time + " INVALID cancel_timer: key must be >= 0\n");
@@ -838,6 +1242,15 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         return timer_on.containsKey(DATA_TIMER_ID);
     }
 
+    /**
+     * Test if the DATA timer associated to a key is active
+     * @param key a number equal to or above 0
+     */
+    @Override
+    public boolean isactive_data_timer(int key) {
+        return timer_on.containsKey(DATA_TIMER_ID + key);
+    }
+
     /**
      * Test if timer with key "key" is active
      * @param key
@@ -858,6 +1271,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
             String txt = ev.event_to_str();
             conn.send_message(txt);
             ack_timer_on = true;
+            commit_timer_start(ACK_TIMER_ID, ACK_TIMEOUT);
         } catch (Exception ex) {
             Log("Error in start_ack_timer: " + ex + "\n");
         }
@@ -875,6 +1289,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 Log(time + " Cancel_ack_timer\n");
                 String txt = ev.event_to_str();
                 conn.send_message(txt);
+                commit_timer_cancel(ACK_TIMER_ID);
             } catch (Exception ex) {
                 Log("Error in cancel_ack_timer: " + ex + "\n");
             }
@@ -890,6 +1305,43 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         return ack_timer_on;
     }
 
+    /**
+     * Get the key of the probe timer: the DATA timer key after the maximum
+     * sequence number, which is not used by the protocols' keyed timers
+     *
+     * @return the timer key
+     */
+    private int probe_timer_key() {
+        return DATA_TIMER_ID + get_max_sequence() + 1;
+    }
+
+    /**
+     * Starts the probe timer, to send a tail-loss probe after a delay
+     *
+     * @param delay the timer interval
+     */
+    @Override
+    public void start_probe_timer(long delay) {
+        start_timer(probe_timer_key(), delay);
+    }
+
+    /**
+     * Cancels the probe timer
+     */
+    @Override
+    public void cancel_probe_timer() {
+        cancel_timer(probe_timer_key());
+    }
+
+    /**
+     * Tests if the probe timer is active
+     * @return true if it is active, false otherwise
+     */
+    @Override
+    public boolean isactive_probe_timer() {
+        return timer_on.containsKey(probe_timer_key());
+    }
+
     /**
      * TRansmits a frame to the channel
      *
@@ -897,15 +1349,35 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
      */
     @Override
     public void to_physical_layer(Frame frame) {
+        if (frame.kind() == Frame.UNDEFINED_FRAME) {
+            Log(time + " ERROR: invalid frame not sent (info longer than "
+                    + Frame.MAX_INFO_LENGTH + " characters?)\n");
+            return;
+        }
         try {
             frame.set_sendTime(time);
-            Event ev = Event.new_Frame_Event(this, time, frame);
+            Frame wire = frame;
+            if ((fec_enc != null) && (frame.kind() == Frame.DATA_FRAME)) {
+                wire = fec_enc.wire_frame(frame);
+                if (wire == null) {
+                    Log(time + " ERROR: invalid frame not sent (no room for the FEC escape in "
+                            + frame.toString() + ")\n");
+                    return;
+                }
+                wire.set_sendTime(time);
+                fec_enc.data_sent(frame.seq(), frame.info());
+            }
+            Event ev = Event.new_Frame_Event(this, time, wire);
             Log(time + " Sending frame: " + frame.toString() + "\n");
             String txt = ev.event_to_str();
             conn.send_message(txt);
             if (frame.kind() == Frame.DATA_FRAME) {
                 sending_data= true;
                 Integer last= transmitted_data.get(frame.info());
+                commit_frame_sent(frame, last != null);
+                if (metrics != null) {
+                    metrics.data_sent(frame.seq(), time, last != null);
+                }
                 if (last != null) {
                     count_statistics(Event.STAT_RETRANSMITED);
                     if (last != frame.seq()) {
@@ -915,12 +1387,76 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
                 } else {
                     transmitted_data.put(frame.info(), frame.seq());
                 }
+            } else {
+                commit_frame_sent(frame, false);
+                if (metrics != null) {
+                    metrics.control_sent(frame);
+                }
             }
         } catch (Exception ex) {
             Log("Error in to_physical_layer: " + ex + "\n");
         }
     }
 
+    /**
+     * Transmits a FEC parity frame to the channel, after the last DATA frame
+     * of a group; the protocol only receives the DATA_END event of the last
+     * DATA frame after the end of the parity frame
+     *
+     * @param frame the parity frame
+     */
+    private void send_parity(Frame frame) {
+        frame.set_sendTime(time);
+        Event ev = Event.new_Frame_Event(this, time, frame);
+        Log(time + " Sending FEC parity: seq=" + frame.seq() + " k=" + frame.ack() + "\n");
+        if (!conn.send_message(ev.event_to_str())) {
+            Log("Error sending parity frame to channel\n");
+        }
+        sending_data = true;
+    }
+
+    /**
+     * Handles a FEC parity frame received; the frames recovered are given to
+     * the protocol as if they were received from the channel, after it has
+     * already seen the gap
+     *
+     * @param frame the parity frame
+     */
+    private void receive_parity(Frame frame) {
+        Log(time + " FEC parity received: seq=" + frame.seq() + " k=" + frame.ack() + "\n");
+        java.util.List<Frame> recovered = fec_dec.parity_received(frame);
+        if (recovered == null) {
+            return;
+        }
+        for (Frame f : recovered) {
+            f.set_sendTime(frame.snd_time());
+            f.set_recvTime(time);
+            Log(time + " FEC frame recovered: " + f.toString() + "\n");
+            proto.from_physical_layer(time, f);
+        }
+    }
+
+    /**
+     * Commits a JFR FrameSent event, if enabled
+     *
+     * @param frame the frame sent
+     * @param retransmission true if the DATA frame was sent before
+     */
+    private void commit_frame_sent(Frame frame, boolean retransmission) {
+        if (!FlightEvents.FRAME_SENT.isEnabled()) {
+            return;
+        }
+        FlightEvents.FrameSent jfr = new FlightEvents.FrameSent();
+        if (jfr.shouldCommit()) {
+            jfr.kind = frame.kindString();
+            jfr.seq = frame.seq();
+            jfr.ack = frame.ack();
+            jfr.simTime = time;
+            jfr.retransmission = retransmission;
+            jfr.commit();
+        }
+    }
+
     /**
      * Test if is sending a DATA frame
      * @return true if is sending, false otherwise
@@ -1023,7 +1559,14 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
         java.awt.EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                new Terminal().setVisible(true);
+                // With protocol.bond=N, opens N terminals bonded in one link
+                int links = Options.get_int("bond", 1);
+                LinkBond bond = (links > 1) ? new LinkBond(Options.get_int("bond.quota", 64)) : null;
+                for (int i = 0; i < Math.max(1, links); i++) {
+                    Terminal t = new Terminal();
+                    t.attach(bond);
+                    t.setVisible(true);
+                }
             }
         });
     }
@@ -1034,7 +1577,7 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
     /**
      * Simulation is running
      */
-    private boolean running;
+    private volatile boolean running;
     /**
      * TCP Socket connected to the channel
      */
@@ -1050,11 +1593,44 @@ public class Terminal extends javax.swing.JFrame implements Log, Simulator {
     /**
      * Callback interface to the protocol object
      */
-    private Callbacks proto;
+    private volatile Callbacks proto;
     /**
      * Network layer object
      */
     private NetworkLayer net;
+    /**
+     * Delay and RTT histograms of the link
+     */
+    private volatile LinkMetrics metrics;
+    /**
+     * Application publisher and subscriber attached to the link
+     */
+    private volatile Flow.Publisher<String> flow_out;
+    private volatile Flow.Subscriber<String> flow_in;
+    /**
+     * Byte stream socket attached to the link
+     */
+    private volatile ReliableLinkSocket socket;
+    /**
+     * Bond of links the link belongs to
+     */
+    private volatile LinkBond bond;
+    /**
+     * JMX MBean of the link
+     */
+    private final LinkMonitor monitor;
+    /**
+     * Forward error correction encoder and decoder, or null if disabled
+     */
+    private FecEncoder fec_enc;
+    private FecDecoder fec_dec;
+    /**
+     * Configuration read from the GUI when connecting, and true while it is
+     * valid
+     */
+    private volatile int cfg_max_seq, cfg_send_window, cfg_recv_window;
+    private volatile long cfg_timeout;
+    private volatile boolean config_loaded;
     /**
      * Flag associated to ack timer
      */
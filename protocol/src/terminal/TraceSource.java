@@ -0,0 +1,97 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Random;
+import java.util.StringTokenizer;
+import simulator.Event;
+import simulator.Log;
+
+/**
+ * Trace driven source: reads the packet arrivals from a text file with one
+ * line per packet with the arrival time and, optionally, the payload size
+ * ("time [size]"). Empty lines and lines starting with '#' are ignored.
+ */
+public class TraceSource extends SyntheticSource {
+
+    /**
+     * Constructor
+     * @param _packets maximum number of packets to generate
+     * @param _size payload size distribution, used when the size is missing
+     * @param _rnd random number generator
+     * @param filename trace file name
+     * @param _log object used to log errors
+     * @throws IOException if the file cannot be opened
+     */
+    TraceSource(int _packets, PayloadSize _size, Random _rnd, String filename,
+            Log _log) throws IOException {
+        super(_packets, _size, _rnd);
+        this.in = new BufferedReader(new FileReader(filename));
+        this.log = _log;
+        this.trace_size = -1;
+    }
+
+    @Override
+    long advance(long prev) {
+        if (in == null) {
+            return Event.UNDEF_TIME;
+        }
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                StringTokenizer st = new StringTokenizer(line);
+                long t = Event.parseLong(st.nextToken());
+                trace_size = st.hasMoreTokens() ? Event.parseInt(st.nextToken()) : -1;
+                return Math.max(t, prev);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.Log("Error reading traffic trace: " + e + "\n");
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            /* Ignore */
+        }
+        in = null;
+        return Event.UNDEF_TIME;
+    }
+
+    @Override
+    public void close() {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                /* Ignore */
+            }
+            in = null;
+        }
+    }
+
+    @Override
+    int next_size() {
+        return (trace_size >= 0) ? trace_size : super.next_size();
+    }
+
+    /**
+     * Trace file reader; null after reaching the end
+     */
+    private BufferedReader in;
+    /**
+     * Object used to log errors
+     */
+    private final Log log;
+    /**
+     * Payload size of the next packet read from the trace, or -1
+     */
+    private int trace_size;
+}
@@ -0,0 +1,31 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * Consumer of the packets delivered by the data link layer to the network
+ * layer. It validates the packets and counts the invalid ones.
+ */
+public interface TrafficSink {
+
+    /**
+     * Delivers one packet
+     * @param time current simulation time
+     * @param packet the packet received
+     * @return true if it was received successfuly, false otherwise
+     */
+    boolean deliver(long time, String packet);
+
+    /**
+     * Tests if the sink can take a new packet now
+     * @return true if a packet can be delivered, false otherwise
+     */
+    boolean has_room();
+
+    /**
+     * Called when the simulation ends, to release resources and write a summary
+     */
+    void close();
+}
@@ -0,0 +1,31 @@
+/*
+ * Sistemas de Telecomunicacoes
+ *          2017/2018
+ */
+package terminal;
+
+/**
+ * Source of the packets sent by the network layer. A source defines when
+ * each packet becomes available and its contents; the network layer polls it
+ * whenever the data link layer asks for a new packet.
+ */
+public interface TrafficSource {
+
+    /**
+     * Get the next packet, if one is available
+     * @param time current simulation time
+     * @return the packet, or null if no packet is available at this time
+     */
+    String poll(long time);
+
+    /**
+     * Get the time when the next packet becomes available
+     * @return the arrival time, or Event.UNDEF_TIME if the source ended
+     */
+    long next_arrival();
+
+    /**
+     * Called when the simulation ends, to release resources
+     */
+    void close();
+}